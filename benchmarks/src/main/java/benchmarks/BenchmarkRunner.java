@@ -0,0 +1,52 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Punto de entrada de benchmarks.jar: ejecuta JMH con las opciones de la línea
+ * de comandos (las mismas que el main de JMH, p.ej. un patrón de benchmarks o
+ * -p datos=worst), siempre con el perfilador de GC (asignación por operación)
+ * y, si no se indica otro con -rf/-rff, con el resultado en JSON en
+ * results/jmh-<fecha>.json para comparar ejecuciones.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        if (cli.shouldHelp()) {
+            cli.showHelp();
+            return;
+        }
+        if (cli.shouldList()) {
+            new Runner(cli).list();
+            return;
+        }
+
+        // Las opciones de este builder tienen prioridad sobre las de cli: solo se
+        // fijan las que no vienen en la línea de comandos
+        ChainedOptionsBuilder opciones = new OptionsBuilder().parent(cli).addProfiler(GCProfiler.class);
+        if (!cli.getResultFormat().hasValue()) {
+            opciones.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cli.getResult().hasValue()) {
+            Path resultados = Path.of("results");
+            Files.createDirectories(resultados);
+            String fecha = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            opciones.result(resultados.resolve("jmh-" + fecha + ".json").toString());
+        }
+        new Runner(opciones.build()).run();
+    }
+}
@@ -0,0 +1,78 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lectura del CSV, por fila: delimitar una fila completa (CsvRowReader.leerFila,
+ * con campos multi-línea) y separarla en columnas (CsvRow.parse). Son las
+ * etapas read y csv_split de ingest_metrics.json.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvBenchmark {
+
+    @Param({ Samples.EJEMPLO, Samples.PEOR_CASO })
+    public String datos;
+
+    private String[] filas;
+    private Object fila;
+    private byte[] csv;
+    private Object lector;
+    private int siguiente;
+
+    @Setup
+    public void preparar() throws Throwable {
+        Samples muestras = Samples.cargar(datos);
+        filas = muestras.filas.toArray(new String[0]);
+        fila = IndexerAccess.nuevaFila(',');
+        csv = muestras.csv();
+        reabrir();
+    }
+
+    private void reabrir() throws Throwable {
+        lector = IndexerAccess.nuevoLector(new ByteArrayInputStream(csv), StandardCharsets.UTF_8);
+        IndexerAccess.leerFila(lector); // cabecera
+    }
+
+    /**
+     * Separar una fila en columnas
+     */
+    @Benchmark
+    public Object csvSplit() throws Throwable {
+        String f = filas[siguiente];
+        siguiente = siguiente + 1 == filas.length ? 0 : siguiente + 1;
+        return IndexerAccess.parseFila(fila, f);
+    }
+
+    /**
+     * Delimitar la siguiente fila del CSV (al llegar al final se vuelve a abrir:
+     * una vez cada pocas decenas de filas)
+     */
+    @Benchmark
+    public String readRow() throws Throwable {
+        String f = IndexerAccess.leerFila(lector);
+        if (f == null) {
+            reabrir();
+            f = IndexerAccess.leerFila(lector);
+        }
+        return f;
+    }
+}
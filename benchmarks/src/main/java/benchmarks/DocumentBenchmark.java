@@ -0,0 +1,77 @@
+package benchmarks;
+
+import org.apache.lucene.document.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construcción de los documentos de propiedad y de host de una fila ya
+ * separada en columnas (etapas field_parse y document_build), sin facetas ni
+ * escritura. Con reutilizar=true, como --reuse-fields.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentBenchmark {
+
+    @Param({ Samples.EJEMPLO, Samples.PEOR_CASO })
+    public String datos;
+
+    @Param({ "false", "true" })
+    public boolean reutilizar;
+
+    private IndexerAccess.Documentos documentos;
+    // Una CsvRow ya parseada por fila, con su id y host_id como en procesarFila
+    private Object[] filas;
+    private String[] ids;
+    private String[] hostIds;
+    private int siguiente;
+
+    @Setup
+    public void preparar() throws Throwable {
+        Samples muestras = Samples.cargar(datos);
+        documentos = new IndexerAccess.Documentos(
+                IndexerAccess.parseFila(IndexerAccess.nuevaFila(','), muestras.cabecera), reutilizar);
+        int n = muestras.filas.size();
+        filas = new Object[n];
+        ids = new String[n];
+        hostIds = new String[n];
+        for (int i = 0; i < n; i++) {
+            filas[i] = IndexerAccess.parseFila(IndexerAccess.nuevaFila(','), muestras.filas.get(i));
+            ids[i] = IndexerAccess.columna(filas[i], documentos.columnaId).trim();
+            hostIds[i] = IndexerAccess.columna(filas[i], documentos.columnaHostId);
+        }
+    }
+
+    private int siguiente() {
+        int i = siguiente;
+        siguiente = i + 1 == filas.length ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public Document crearDocumentoPropiedad() throws Throwable {
+        int i = siguiente();
+        return documentos.propiedad(filas[i], ids[i], hostIds[i]);
+    }
+
+    @Benchmark
+    public Document crearDocumentoHost() throws Throwable {
+        int i = siguiente();
+        return documentos.host(filas[i], hostIds[i]);
+    }
+}
@@ -0,0 +1,73 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limpieza y parseo de valores de columnas (etapa field_parse): cada llamada
+ * toma el valor de la fila siguiente de la muestra, incluidos los vacíos que
+ * tenga.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FieldParsersBenchmark {
+
+    @Param({ Samples.EJEMPLO, Samples.PEOR_CASO })
+    public String datos;
+
+    private String[] amenities;
+    private String[] descripciones;
+    private String[] fechas;
+    private String[] precios;
+    private int siguiente;
+
+    @Setup
+    public void preparar() throws Throwable {
+        Samples muestras = Samples.cargar(datos);
+        amenities = muestras.columna("amenities");
+        descripciones = muestras.columna("description");
+        fechas = muestras.columna("host_since");
+        precios = muestras.columna("price");
+    }
+
+    private int siguiente(int n) {
+        int i = siguiente;
+        siguiente = i + 1 >= n ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public Object parseAmenities() throws Throwable {
+        return IndexerAccess.parseAmenities(amenities[siguiente(amenities.length)]);
+    }
+
+    @Benchmark
+    public String htmlToText() throws Throwable {
+        return IndexerAccess.htmlToText(descripciones[siguiente(descripciones.length)]);
+    }
+
+    @Benchmark
+    public long parseDate() throws Throwable {
+        return IndexerAccess.parseDate(fechas[siguiente(fechas.length)]);
+    }
+
+    @Benchmark
+    public double parsePrice() throws Throwable {
+        return IndexerAccess.parsePrice(precios[siguiente(precios.length)]);
+    }
+}
@@ -0,0 +1,213 @@
+package benchmarks;
+
+import org.apache.lucene.document.Document;
+
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Acceso a los métodos internos del indexador que se miden.
+ *
+ * El indexador está en el paquete por defecto, que no se puede importar desde
+ * un paquete con nombre (y JMH no admite benchmarks en el paquete por
+ * defecto), así que se llega a sus métodos con MethodHandles. Cada handle es un
+ * static final y se llama con invokeExact: el JIT lo trata como una llamada
+ * directa y se puede inlinear igual que en el indexador.
+ */
+final class IndexerAccess {
+
+    private static final Class<?> INDEXADOR = clase("AirbnbIndexador");
+    private static final Class<?> CONFIG = clase("AirbnbIndexador$Config");
+    private static final Class<?> ENTRADA = clase("AirbnbIndexador$Entrada");
+    private static final Class<?> ESQUEMA = clase("AirbnbIndexador$EsquemaCsv");
+    private static final Class<?> CSV_ROW = clase("CsvRow");
+    private static final Class<?> CSV_ROW_READER = clase("CsvRowReader");
+    private static final Class<?> CAMPOS = clase("ReusableFields");
+    private static final Class<?> METRICAS = clase("IngestMetrics");
+    private static final Class<?> REGISTRO = clase("IngestMetrics$Registro");
+    private static final Class<?> PARSERS = clase("FieldParsers");
+
+    // Campos de texto y parseo de valores
+    private static final MethodHandle PARSE_AMENITIES = estatico(INDEXADOR, "parseAmenities", List.class,
+            String.class);
+    private static final MethodHandle HTML_TO_TEXT = estatico(INDEXADOR, "htmlToText", String.class, String.class);
+    private static final MethodHandle PARSE_DATE = estatico(PARSERS, "fecha", long.class, String.class);
+    private static final MethodHandle PARSE_PRICE = estatico(PARSERS, "precio", double.class, String.class);
+
+    // CSV
+    private static final MethodHandle NUEVA_FILA = constructor(CSV_ROW, char.class);
+    private static final MethodHandle PARSE_FILA = virtual(CSV_ROW, "parse", CSV_ROW, CharSequence.class);
+    private static final MethodHandle GET_COLUMNA = virtual(CSV_ROW, "get", String.class, int.class);
+    private static final MethodHandle NUEVO_LECTOR = constructor(CSV_ROW_READER, InputStream.class, Charset.class,
+            long.class);
+    private static final MethodHandle LEER_FILA = virtual(CSV_ROW_READER, "leerFila", String.class);
+
+    // Documentos
+    private static final MethodHandle DOCUMENTO_PROPIEDAD = virtual(INDEXADOR, "crearDocumentoPropiedad",
+            Document.class, ENTRADA, CSV_ROW, String.class, String.class, long.class, CAMPOS, REGISTRO);
+    private static final MethodHandle DOCUMENTO_HOST = virtual(INDEXADOR, "crearDocumentoHost", Document.class,
+            ESQUEMA, CSV_ROW, String.class, long.class, CAMPOS, REGISTRO);
+
+    private IndexerAccess() {
+    }
+
+    static List<?> parseAmenities(String s) throws Throwable {
+        return (List<?>) PARSE_AMENITIES.invokeExact(s);
+    }
+
+    static String htmlToText(String s) throws Throwable {
+        return (String) HTML_TO_TEXT.invokeExact(s);
+    }
+
+    static long parseDate(String s) throws Throwable {
+        return (long) PARSE_DATE.invokeExact(s);
+    }
+
+    static double parsePrice(String s) throws Throwable {
+        return (double) PARSE_PRICE.invokeExact(s);
+    }
+
+    /**
+     * CsvRow reutilizable (una por hilo en el indexador)
+     */
+    static Object nuevaFila(char delimitador) throws Throwable {
+        return (Object) NUEVA_FILA.invokeExact(delimitador);
+    }
+
+    static Object parseFila(Object fila, CharSequence texto) throws Throwable {
+        return (Object) PARSE_FILA.invokeExact(fila, texto);
+    }
+
+    static String columna(Object fila, int col) throws Throwable {
+        return (String) GET_COLUMNA.invokeExact(fila, col);
+    }
+
+    static Object nuevoLector(InputStream in, Charset charset) throws Throwable {
+        return (Object) NUEVO_LECTOR.invokeExact(in, charset, 0L);
+    }
+
+    static String leerFila(Object lector) throws Throwable {
+        return (String) LEER_FILA.invokeExact(lector);
+    }
+
+    /**
+     * Lo que necesitan crearDocumentoPropiedad y crearDocumentoHost: un
+     * indexador con la configuración por defecto, la entrada con el esquema de la
+     * cabecera, los campos de un worker y un registro de métricas
+     */
+    static final class Documentos {
+        private final Object indexador;
+        private final Object entrada;
+        private final Object esquema;
+        private final Object camposPropiedad;
+        private final Object camposHost;
+        private final Object registro;
+        final int columnaId;
+        final int columnaHostId;
+
+        /**
+         * @param cabecera  fila de cabecera ya parseada (CsvRow)
+         * @param reutilizar como --reuse-fields
+         */
+        Documentos(Object cabecera, boolean reutilizar) throws Throwable {
+            MethodHandles.Lookup l = lookup(INDEXADOR);
+            Object config = l.findConstructor(CONFIG, methodType(void.class)).invoke();
+            indexador = l.findConstructor(INDEXADOR, methodType(void.class, CONFIG)).invoke(config);
+            esquema = l.findStatic(ESQUEMA, "compilar", methodType(ESQUEMA, CSV_ROW, String.class))
+                    .invoke(cabecera, "id");
+            entrada = l.findConstructor(ENTRADA, methodType(void.class, int.class, Path.class, String.class))
+                    .invoke(0, Path.of("benchmark.csv"), null);
+            l.findSetter(ENTRADA, "esquema", ESQUEMA).invoke(entrada, esquema);
+            MethodHandle campos = l.findConstructor(CAMPOS, methodType(void.class, boolean.class, int.class));
+            camposPropiedad = campos.invoke(reutilizar, constante("P_NUM_SLOTS"));
+            camposHost = campos.invoke(reutilizar, constante("H_NUM_SLOTS"));
+            Object metricas = l.findConstructor(METRICAS, methodType(void.class)).invoke();
+            registro = l.findVirtual(METRICAS, "registro", methodType(REGISTRO)).invoke(metricas);
+            columnaId = (int) l.findGetter(ESQUEMA, "id", int.class).invoke(esquema);
+            columnaHostId = (int) l.findGetter(ESQUEMA, "hostId", int.class).invoke(esquema);
+        }
+
+        Document propiedad(Object fila, String id, String hostId) throws Throwable {
+            return (Document) DOCUMENTO_PROPIEDAD.invokeExact(indexador, entrada, fila, id, hostId, 0L,
+                    camposPropiedad, registro);
+        }
+
+        Document host(Object fila, String hostId) throws Throwable {
+            return (Document) DOCUMENTO_HOST.invokeExact(indexador, esquema, fila, hostId, 0L, camposHost,
+                    registro);
+        }
+    }
+
+    private static int constante(String nombre) throws Throwable {
+        return (int) lookup(INDEXADOR).findStaticGetter(INDEXADOR, nombre, int.class).invoke();
+    }
+
+    private static Class<?> clase(String nombre) {
+        try {
+            return Class.forName(nombre);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("No se encuentra la clase del indexador " + nombre, e);
+        }
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> c) {
+        try {
+            return MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Handle de un método estático con un único argumento
+     */
+    private static MethodHandle estatico(Class<?> c, String nombre, Class<?> retorno, Class<?> argumento) {
+        try {
+            return lookup(c).findStatic(c, nombre, methodType(retorno, argumento));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(c.getName() + " no tiene " + nombre + "(" + argumento.getSimpleName()
+                    + ")", e);
+        }
+    }
+
+    /**
+     * Handle de un constructor con el tipo de la clase borrado a Object
+     */
+    private static MethodHandle constructor(Class<?> c, Class<?>... argumentos) {
+        try {
+            MethodHandle h = lookup(c).findConstructor(c, methodType(void.class, argumentos));
+            return h.asType(h.type().changeReturnType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No se encuentra el constructor de " + c.getName(), e);
+        }
+    }
+
+    /**
+     * Handle de un método de instancia; las clases del paquete por defecto (en
+     * el receptor, los argumentos y el retorno) se borran a Object
+     */
+    private static MethodHandle virtual(Class<?> c, String nombre, Class<?> retorno, Class<?>... argumentos) {
+        try {
+            MethodHandle h = lookup(c).findVirtual(c, nombre, methodType(retorno, argumentos));
+            MethodType tipo = h.type();
+            for (int i = 0; i < tipo.parameterCount(); i++) {
+                if (tipo.parameterType(i).getPackageName().isEmpty()) {
+                    tipo = tipo.changeParameterType(i, Object.class);
+                }
+            }
+            if (tipo.returnType().getPackageName().isEmpty()) {
+                tipo = tipo.changeReturnType(Object.class);
+            }
+            return h.asType(tipo);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No se encuentra " + c.getName() + "." + nombre, e);
+        }
+    }
+}
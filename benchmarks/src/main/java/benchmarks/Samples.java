@@ -0,0 +1,215 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Filas de entrada de los benchmarks.
+ *
+ * - sample: filas de example_listings.csv (la ruta se puede fijar con
+ * -Dbench.csv; si no, se busca en el directorio actual y en el padre), como
+ * mucho -Dbench.rows (1000 por defecto), repartidas por todo el fichero.
+ * - worst: filas sintéticas con la cabecera real y los casos caros de cada
+ * etapa: campos entrecomillados con comas, comillas escapadas y saltos de
+ * línea, descripciones largas con mucho HTML y entidades, cientos de amenities
+ * con escapes JSON y precios con separadores de miles. Son siempre las mismas
+ * (semilla fija), así que los resultados de dos ejecuciones se pueden comparar.
+ */
+final class Samples {
+
+    static final String EJEMPLO = "sample";
+    static final String PEOR_CASO = "worst";
+
+    private static final int FILAS_PEOR_CASO = 64;
+
+    // Texto de la cabecera y de cada fila, tal como aparecen en el CSV
+    final String cabecera;
+    final List<String> filas;
+
+    private Samples(String cabecera, List<String> filas) {
+        this.cabecera = cabecera;
+        this.filas = filas;
+    }
+
+    static Samples cargar(String tipo) throws Throwable {
+        return switch (tipo) {
+            case EJEMPLO -> ejemplo();
+            case PEOR_CASO -> peorCaso();
+            default -> throw new IllegalArgumentException("Datos desconocidos: " + tipo + " (sample|worst)");
+        };
+    }
+
+    /**
+     * El CSV completo (cabecera y filas)
+     */
+    byte[] csv() {
+        StringBuilder sb = new StringBuilder(cabecera).append('\n');
+        for (String f : filas) {
+            sb.append(f).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Valores de una columna en todas las filas (null si la fila no la tiene)
+     */
+    String[] columna(String nombre) throws Throwable {
+        Object fila = IndexerAccess.parseFila(IndexerAccess.nuevaFila(','), cabecera);
+        int col = Arrays.asList(cabecera.split(",", -1)).indexOf(nombre);
+        String[] valores = new String[filas.size()];
+        for (int i = 0; i < valores.length; i++) {
+            IndexerAccess.parseFila(fila, filas.get(i));
+            valores[i] = col < 0 ? null : IndexerAccess.columna(fila, col);
+        }
+        return valores;
+    }
+
+    private static Samples ejemplo() throws Throwable {
+        Path csv = buscarEjemplo();
+        int maximo = Integer.getInteger("bench.rows", 1000);
+        List<String> todas = new ArrayList<>();
+        String cabecera;
+        try (InputStream in = Files.newInputStream(csv)) {
+            Object lector = IndexerAccess.nuevoLector(in, StandardCharsets.UTF_8);
+            cabecera = IndexerAccess.leerFila(lector);
+            for (String f; (f = IndexerAccess.leerFila(lector)) != null;) {
+                todas.add(f);
+            }
+        }
+        if (cabecera == null || todas.isEmpty()) {
+            throw new IOException("Sin filas de datos: " + csv);
+        }
+        // Muestra repartida por todo el fichero
+        List<String> filas = new ArrayList<>();
+        double paso = Math.max(1.0, (double) todas.size() / maximo);
+        for (double i = 0; i < todas.size() && filas.size() < maximo; i += paso) {
+            filas.add(todas.get((int) i));
+        }
+        return new Samples(cabecera, filas);
+    }
+
+    private static Path buscarEjemplo() throws IOException {
+        String ruta = System.getProperty("bench.csv");
+        if (ruta != null) {
+            return Path.of(ruta);
+        }
+        for (Path p : List.of(Path.of("example_listings.csv"), Path.of("..", "example_listings.csv"))) {
+            if (Files.exists(p)) {
+                return p;
+            }
+        }
+        throw new IOException("No se encuentra example_listings.csv: indica la ruta con -Dbench.csv=<fichero>");
+    }
+
+    /**
+     * Filas sintéticas con la cabecera de example_listings.csv
+     */
+    private static Samples peorCaso() throws Throwable {
+        String cabecera = new String(Files.readAllBytes(buscarEjemplo()), StandardCharsets.UTF_8).lines()
+                .findFirst().orElseThrow();
+        Object lectorCabecera = IndexerAccess.parseFila(IndexerAccess.nuevaFila(','), cabecera);
+        List<String> columnas = new ArrayList<>();
+        for (int c = 0; IndexerAccess.columna(lectorCabecera, c) != null; c++) {
+            columnas.add(IndexerAccess.columna(lectorCabecera, c));
+        }
+
+        Random r = new Random(42);
+        List<String> filas = new ArrayList<>(FILAS_PEOR_CASO);
+        for (int i = 0; i < FILAS_PEOR_CASO; i++) {
+            Map<String, String> v = new LinkedHashMap<>();
+            v.put("id", Integer.toString(1_000_000 + i));
+            v.put("listing_url", "https://www.airbnb.com/rooms/" + (1_000_000 + i));
+            v.put("name", "Loft \"Sunset\", " + (1 + r.nextInt(9)) + "BR\nwith view, pool & \"rooftop\"");
+            v.put("description", html(r, 16 * 1024));
+            v.put("neighborhood_overview", html(r, 8 * 1024));
+            v.put("host_id", Integer.toString(5_000_000 + i));
+            v.put("host_url", "https://www.airbnb.com/users/show/" + (5_000_000 + i));
+            v.put("host_name", "María \"Mery\" O'Neil");
+            v.put("host_since", String.format(Locale.ROOT, "20%02d-%02d-%02d", 8 + r.nextInt(17),
+                    1 + r.nextInt(12), 1 + r.nextInt(28)));
+            v.put("host_location", "Los Angeles, CA");
+            v.put("host_about", html(r, 8 * 1024));
+            v.put("host_response_time", "within an hour");
+            v.put("host_is_superhost", r.nextBoolean() ? "t" : "f");
+            v.put("host_neighbourhood", "Silver Lake");
+            v.put("neighbourhood_cleansed", "Silver Lake");
+            v.put("latitude", "34.0" + (100000000 + r.nextInt(899999999)));
+            v.put("longitude", "-118.2" + (100000000 + r.nextInt(899999999)));
+            v.put("property_type", "Entire rental unit");
+            v.put("bathrooms", (1 + r.nextInt(6)) + ".5");
+            v.put("bathrooms_text", (1 + r.nextInt(6)) + ".5 shared baths");
+            v.put("bedrooms", Integer.toString(1 + r.nextInt(12)));
+            v.put("amenities", amenities(r, 250));
+            v.put("price", String.format(Locale.ROOT, "$%,d.%02d", 1_000_000 + r.nextInt(9_000_000),
+                    r.nextInt(100)));
+            v.put("number_of_reviews", Integer.toString(r.nextInt(100_000)));
+            v.put("review_scores_rating", "4." + (10 + r.nextInt(90)));
+
+            StringBuilder fila = new StringBuilder();
+            for (int c = 0; c < columnas.size(); c++) {
+                if (c > 0) {
+                    fila.append(',');
+                }
+                fila.append(escapar(v.getOrDefault(columnas.get(c), "")));
+            }
+            filas.add(fila.toString());
+        }
+        return new Samples(cabecera, filas);
+    }
+
+    /**
+     * Texto con etiquetas, saltos <br />, entidades con nombre y numéricas
+     */
+    private static String html(Random r, int longitud) {
+        String[] trozos = {
+                "<b>Spacious</b> loft &amp; garden", "<br /><br />", "Walk to caf&eacute; &quot;Luna&quot;",
+                " &#39;n&#39; shops&nbsp;&mdash; ", "<i>5 min</i>. ", "<a href=\"https://example.com/?a=1&amp;b=2\">",
+                "map</a>", " 100% &lt;quiet&gt; &#x2764; ", "Cozy bedroom with queen bed, ", "<br />",
+                "fast Wi-Fi (500 Mbps), dedicated workspace. "
+        };
+        StringBuilder sb = new StringBuilder(longitud + 64);
+        while (sb.length() < longitud) {
+            sb.append(trozos[r.nextInt(trozos.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Lista JSON de amenities, con comillas escapadas y escapes \\uXXXX
+     */
+    private static String amenities(Random r, int n) {
+        String[] nombres = {
+                "Samsung 55\\\" 4K HDTV with Netflix, Roku", "Shampoo \\u2013 organic", "Wifi", "Kitchen",
+                "Free parking on premises", "Hot water kettle", "Dedicated workspace", "\\\"Smart\\\" lock",
+                "Body soap \\u00e9cologique", "Sound system with Bluetooth and aux"
+        };
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('"').append(nombres[r.nextInt(nombres.length)]).append(' ').append(i).append('"');
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Campo CSV: entre comillas (duplicándolas) si tiene comas, comillas o saltos
+     */
+    private static String escapar(String valor) {
+        if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0) {
+            return valor;
+        }
+        return '"' + valor.replace("\"", "\"\"") + '"';
+    }
+}
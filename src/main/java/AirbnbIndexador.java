@@ -1,32 +1,49 @@
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.core.KeywordTokenizer;
-import org.apache.lucene.analysis.core.LowerCaseFilter;
-import org.apache.lucene.analysis.en.EnglishAnalyzer;
-import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.*;
 import org.apache.lucene.facet.FacetField;
 import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.facet.range.LongRange;
+import org.apache.lucene.facet.taxonomy.OrdinalMappingLeafReader;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
 import org.apache.lucene.index.*;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.similarities.BM25Similarity;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.IOUtils;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Comparator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Indexador Lucene para datos de Airbnb Los Angeles (Jun 2025)
@@ -52,62 +69,630 @@ import java.util.concurrent.atomic.AtomicLong;
  * 
  * ARGUMENTOS CLI:
  * --input <ruta> : (OBLIGATORIO) Ruta al archivo CSV de entrada (ej:
- * example_listings.csv)
+ * example_listings.csv). Puede estar comprimido con gzip (listings.csv.gz) o
+ * zstd (si aircompressor está en el classpath): se descomprime en memoria en un
+ * hilo de lectura anticipada, siempre en modo stream. También puede ser una
+ * carpeta (se indexan todos sus .csv, .csv.gz y .csv.zst, también en
+ * subcarpetas) o un patrón glob (ej: "snapshots/**.csv.gz"); cada
+ * fichero es una ciudad, que se guarda en el campo y la faceta city
  * --index-root <carpeta> : (OBLIGATORIO) Carpeta donde se crearán los índices
  * (index_properties/ e index_hosts/)
+ * --target <shared|per-city> : Con varias entradas, dónde se indexan. Default:
+ * shared
+ * - shared: todas en los mismos índices, con varios ficheros a la vez que se
+ * reparten los --threads hilos (hosts vistos y taxonomías compartidos)
+ * - per-city: unos índices por ciudad en index-root/<ciudad>/, con varias
+ * ciudades a la vez que se reparten los --threads hilos
  * --mode <modo> : Modo de indexación (build|update|rebuild). Default: build
  * - build: crea nuevos índices (borra existentes si hay)
- * - update: añade documentos a índices existentes (upsert)
+ * - update: añade documentos a índices existentes (upsert). Las filas cuyo
+ * content_hash coincide con el del documento ya indexado se omiten
  * - rebuild: reconstruye completamente los índices (con --force los borra
  * primero)
+ * --input-mode <modo> : Lectura del CSV (stream|mmap). Default: stream
+ * - stream: un hilo lector reparte lotes de filas a los workers
+ * - mmap: mapea el fichero en memoria, lo divide en rangos alineados a filas
+ * y cada worker parsea su rango (solo charsets compatibles con ASCII)
  * --delimiter <char> : Delimitador CSV. Default: ","
  * --encoding <charset> : Codificación del archivo CSV. Default: "utf-8"
  * --id-field <nombre> : Nombre del campo ID en el CSV. Default: "id"
- * --threads <n> : Número de hilos para procesamiento. Default: cores/2
+ * --threads <n> : Número de hilos que parsean filas y construyen/escriben
+ * documentos en paralelo (el hilo principal solo lee el CSV). Default: cores/2
  * --max-errors <n> : Máximo número de errores antes de abortar. Default: 100
  * --log-file <ruta> : Archivo opcional para guardar logs (además de consola)
+ * --log-level <nivel> : Nivel mínimo de los mensajes (debug|info|warn|error).
+ * Default: info. Los mensajes se escriben por lotes desde un hilo propio
+ * --metrics-interval <s> : Cada cuántos segundos se escribe en el log el ritmo
+ * (filas/s, MB/s) y el reparto del tiempo entre etapas (0 = nunca). Default: 30.
+ * Al terminar se escribe siempre index-root/ingest_metrics.json con el tiempo
+ * y la latencia (histograma y percentiles) de cada etapa (read, csv_split,
+ * field_parse, document_build, facet_build, index_write, commit, close) y la
+ * memoria asignada y la CPU de cada hilo
  * --dry-run : Simula la indexación sin escribir en los índices
  * --force : Fuerza el borrado completo de índices existentes (solo con --mode
  * rebuild)
+ * --profile <perfil> : Ajustes de IndexWriterConfig (bulk|update|lowmem) para
+ * ambos índices. Default: bulk en build/rebuild, update en update
+ * - bulk: buffer de RAM grande, merges con tiers anchos, sin ficheros compuestos
+ * - update: la configuración por defecto de Lucene (buffer de 16 MB,
+ * TieredMergePolicy por defecto, compound files)
+ * - lowmem: buffers pequeños, LogByteSizeMergePolicy y un solo hilo de merge
+ * --profile-properties <perfil> / --profile-hosts <perfil> : Perfil de un
+ * único índice (tiene prioridad sobre --profile)
+ * --commit-policy <política> : Cuándo hacer commit de los cuatro índices
+ * (propiedades, hosts y sus taxonomías, siempre juntos). "end" o una lista
+ * "time=<s>,bytes=<MB leídos>,ram=<MB de los writers>,rows=<n>" (el primer
+ * umbral que se alcance). Default: end en build/rebuild, rows=5000 en update.
+ * Cada commit guarda en sus datos de usuario la generación, el fichero, el
+ * byte y las filas indexadas hasta ese punto.
+ * --resume : Continúa una indexación interrumpida desde el último commit de
+ * los índices existentes (ver --commit-policy): vuelve a abrir índices y
+ * taxonomías, salta en el CSV al byte guardado y trata los hosts y los ids
+ * de propiedad ya indexados como vistos (--duplicates se aplica igual que sin
+ * la interrupción), de modo que no se duplica ninguna fila. Solo con un único
+ * fichero de entrada: con varios, los commits intermedios no guardan posición
+ * --shards <n> : Solo build/rebuild. Reparte las filas por hash del id entre n
+ * fragmentos temporales (cada uno con sus índices y taxonomías, escritos en
+ * paralelo) y al final los une en los índices definitivos con addIndexes,
+ * traduciendo los ordinales de faceta. Default: 1 (sin fragmentar)
+ * --index-sort <none|reviews|price> : Orden del índice de propiedades
+ * (number_of_reviews descendente o price ascendente). Las consultas ordenadas
+ * por ese mismo criterio terminan en cuanto tienen los k primeros. Solo se
+ * fija al crear el índice; en update se conserva el existente. Default: none
+ * --duplicates <first|last> : Qué fila gana si un id se repite en el CSV.
+ * Default: last. La primera aparición se escribe al leerla; con last solo la
+ * última de las siguientes se guarda en memoria y se aplica antes de cada
+ * commit (con varios hilos, "primera" es la primera que se procesa)
+ * --reuse-fields : Cada worker reutiliza un único juego de Field/Document y solo
+ * actualiza sus valores fila a fila (menos asignaciones en cargas masivas). Los
+ * documentos nuevos se escriben entonces de uno en uno en vez de con
+ * addDocuments por lote
  */
 public class AirbnbIndexador {
 
     // Configuración por defecto
     private static final String DEFAULT_MODE = "build";
+    private static final String DEFAULT_INPUT_MODE = "stream";
     private static final String DEFAULT_DELIMITER = ",";
     private static final String DEFAULT_ENCODING = "utf-8";
     private static final String DEFAULT_ID_FIELD = "id";
     private static final int DEFAULT_MAX_ERRORS = 100;
+    private static final String DEFAULT_DUPLICATES = "last";
+    private static final String DEFAULT_TARGET = "shared";
+    private static final String DEFAULT_LOG_LEVEL = "info";
+    private static final long DEFAULT_METRICS_INTERVAL = 30;
+    // Posición global de una fila: orden del fichero y posición dentro de él
+    private static final int BITS_POSICION = 48;
+    private static final long MASCARA_POSICION = (1L << BITS_POSICION) - 1;
+    // Posición de las filas indexadas antes del checkpoint (--resume), anterior a
+    // la de cualquier fila que se procese al reanudar
+    private static final long ANTES_DEL_CHECKPOINT = -1;
+    // Filas entre commits por defecto en modo update
     private static final int COMMIT_INTERVAL = 5000;
+    // Filas por lote entregado a los workers y lotes en vuelo por worker
+    private static final int TAMANO_LOTE = 256;
+    private static final int LOTES_POR_HILO = 4;
+    // Lectura anticipada de entradas comprimidas: bloques descomprimidos en vuelo
+    private static final int TAMANO_BLOQUE_DESCOMPRESION = 1024 * 1024;
+    private static final int BLOQUES_DESCOMPRESION = 4;
 
     // Constantes públicas para nombres de índices (reutilizables en búsquedas)
     public static final String INDEX_PROPERTIES = "index_properties";
     public static final String INDEX_HOSTS = "index_hosts";
     public static final String INDEX_TAXO_PROPERTIES = "taxo_properties";
     public static final String INDEX_TAXO_HOSTS = "taxo_hosts";
+    // Carpeta (dentro de index-root) de los fragmentos temporales de --shards
+    private static final String DIR_FRAGMENTOS = "shards_tmp";
+    // Informe de métricas de la última ingesta (en index-root)
+    public static final String FICHERO_METRICAS = "ingest_metrics.json";
     public static final String FIELD_CONTENTS = "contents";
+    public static final String FIELD_CONTENT_HASH = "content_hash";
+    // Semilla del hash de contenido: cambiarla si cambia cómo se construyen los
+    // documentos, para que el siguiente update los reescriba todos
+    private static final long VERSION_DOCUMENTOS = 2;
+    // Amenities distintas vistas en el proceso, una instancia de String por valor
+    // (compartido por todos los workers e índices)
+    private static final AmenityDictionary AMENIDADES = new AmenityDictionary();
 
     // Configuración de la aplicación
     private final Config config;
+    // Analizador de los writers (compartido con las búsquedas); también
+    // analiza contents al construir los documentos
+    private final Analyzer analizador = AnalyzerRegistry.porCampo();
+    // Tokens de los valores cortos repetidos de los campos en inglés
+    private final TokenCache cacheTokens = AnalyzerRegistry.cacheIngles();
 
     // Writers para los dos índices
     private IndexWriter writerProperties;
     private IndexWriter writerHosts;
     private DirectoryTaxonomyWriter taxoWriterProperties;
     private DirectoryTaxonomyWriter taxoWriterHosts;
+    // Dónde se escriben las filas: los writers anteriores o, con --shards, un
+    // fragmento temporal por shard
+    private Destino[] destinos;
+    private Path raizFragmentos;
+    // Orden del índice de propiedades (--index-sort), o null
+    private Sort ordenPropiedades;
     private FacetsConfig facetsConfig;
-
-    // Mapeo de columnas del CSV
-    private final Map<String, Integer> headerIndex = new HashMap<>();
+    private CommitCoordinator commits;
+    // Datos del commit desde el que se reanuda (--resume), o null
+    private Map<String, String> checkpoint;
+
+    // Estado reutilizable de cada worker (cursor CSV y campos de los documentos)
+    private final ThreadLocal<ContextoHilo> contextoHilo = ThreadLocal.withInitial(ContextoHilo::new);
+
+    // Slots de ReusableFields del documento de propiedad
+    private static final int P_ID = 0;
+    private static final int P_LISTING_URL = 1;
+    private static final int P_NAME = 2;
+    private static final int P_DESCRIPTION = 3;
+    private static final int P_NEIGHBORHOOD_OVERVIEW = 4;
+    private static final int P_NEIGHBOURHOOD_ORIGINAL = 5;
+    private static final int P_NEIGHBOURHOOD = 6;
+    private static final int P_NEIGHBOURHOOD_DV = 7;
+    private static final int P_LOCATION = 8;
+    private static final int P_LATITUDE = 9;
+    private static final int P_LONGITUDE = 10;
+    private static final int P_LOCATION_DV = 11;
+    private static final int P_PROPERTY_TYPE_ORIGINAL = 12;
+    private static final int P_PROPERTY_TYPE = 13;
+    private static final int P_PROPERTY_TYPE_DV = 14;
+    private static final int P_AMENITY = 15;
+    private static final int P_PRICE = 16;
+    private static final int P_PRICE_STORED = 17;
+    private static final int P_PRICE_DV = 18;
+    private static final int P_REVIEWS = 19;
+    private static final int P_REVIEWS_STORED = 20;
+    private static final int P_REVIEWS_DV = 21;
+    private static final int P_RATING = 22;
+    private static final int P_RATING_STORED = 23;
+    private static final int P_RATING_DV = 24;
+    private static final int P_BATHROOMS = 25;
+    private static final int P_BATHROOMS_STORED = 26;
+    private static final int P_BATHROOMS_DV = 27;
+    private static final int P_BATHROOMS_TEXT = 28;
+    private static final int P_BEDROOMS = 29;
+    private static final int P_BEDROOMS_STORED = 30;
+    private static final int P_BEDROOMS_DV = 31;
+    private static final int P_HOST_ID = 32;
+    private static final int P_HOST_ID_DV = 33;
+    private static final int P_CONTENTS = 34;
+    private static final int P_CONTENT_HASH = 35;
+    private static final int P_ID_KEY = 36;
+    private static final int P_ID_NUM = 37;
+    private static final int P_CITY = 38;
+    private static final int P_CITY_DV = 39;
+    private static final int P_NUM_SLOTS = 40;
+
+    // Slots de ReusableFields del documento de host
+    private static final int H_HOST_ID = 0;
+    private static final int H_HOST_ID_DV = 1;
+    private static final int H_HOST_URL = 2;
+    private static final int H_HOST_NAME = 3;
+    private static final int H_HOST_SINCE = 4;
+    private static final int H_HOST_SINCE_STORED = 5;
+    private static final int H_HOST_SINCE_ORIGINAL = 6;
+    private static final int H_HOST_SINCE_DV = 7;
+    private static final int H_HOST_LOCATION = 8;
+    private static final int H_HOST_NEIGHBOURHOOD = 9;
+    private static final int H_HOST_ABOUT = 10;
+    private static final int H_RESPONSE_TIME_ORIGINAL = 11;
+    private static final int H_RESPONSE_TIME = 12;
+    private static final int H_RESPONSE_TIME_DV = 13;
+    private static final int H_SUPERHOST = 14;
+    private static final int H_SUPERHOST_STORED = 15;
+    private static final int H_SUPERHOST_DV = 16;
+    private static final int H_CONTENTS = 17;
+    private static final int H_CONTENT_HASH = 18;
+    private static final int H_NUM_SLOTS = 19;
 
     // Contadores
     private final AtomicInteger totalPropiedades = new AtomicInteger(0);
     private final AtomicInteger totalHosts = new AtomicInteger(0);
     private final AtomicInteger errores = new AtomicInteger(0);
     private final AtomicLong inicioTiempo = new AtomicLong(0);
+    // Tiempo por etapa, ritmo y memoria asignada por hilo (ver IngestMetrics)
+    private final IngestMetrics metricas = new IngestMetrics();
+
+    // Hosts ya indexados en esta sesión (compartido por los workers). Los host_id
+    // numéricos van a un conjunto primitivo de long (unos bytes por host); el resto,
+    // que no debería darse en Inside Airbnb, a un conjunto de String
+    private final ConcurrentLongHashSet hostsVistos = new ConcurrentLongHashSet();
+    private final Set<String> hostsVistosTexto = ConcurrentHashMap.newKeySet();
+
+    // Detección de cambios: foto de los índices tal como estaban al empezar (null
+    // si se crean desde cero) y recuento de filas sin cambios / actualizadas / nuevas
+    private DirectoryReader lectorPropiedades;
+    private DirectoryReader lectorHosts;
+    private final LongAdder propiedadesSinCambios = new LongAdder();
+    private final LongAdder propiedadesActualizadas = new LongAdder();
+    private final LongAdder propiedadesNuevas = new LongAdder();
+    private final LongAdder hostsSinCambios = new LongAdder();
+    private final LongAdder hostsActualizados = new LongAdder();
+    private final LongAdder hostsNuevos = new LongAdder();
+
+    // Ids de propiedad ya vistos en esta ejecución, con la mayor posición en la
+    // que han aparecido (ver posicionGlobal): cada id se escribe una sola vez
+    // desde los workers y sus repeticiones en el CSV se resuelven según --duplicates
+    private final ConcurrentLongMaxMap idsVistos = new ConcurrentLongMaxMap();
+    private final Map<String, Long> idsVistosTexto = new ConcurrentHashMap<>();
+    private final LongAdder propiedadesRepetidas = new LongAdder();
+    // Repeticiones pendientes con --duplicates last (se aplican antes de cada commit)
+    // y el contexto con el que se aplican. Por id solo se guarda la aparición de
+    // mayor posición, la única que sobrevive: la memoria depende del número de ids
+    // repetidos, no del de filas repetidas
+    private final ConcurrentHashMap<String, FilaAplazada> repeticiones = new ConcurrentHashMap<>();
+    private ContextoHilo contextoRepeticiones;
+
+    /**
+     * Esquema compilado de la cabecera: la posición de cada columna que usa el
+     * indexador se resuelve una sola vez, y los constructores de documentos leen
+     * las columnas por posición (CsvRow.get devuelve null para -1, columna
+     * ausente).
+     */
+    static final class EsquemaCsv {
+        final int id;
+        final int listingUrl;
+        final int name;
+        final int description;
+        final int neighborhoodOverview;
+        final int neighbourhoodCleansed;
+        final int latitude;
+        final int longitude;
+        final int propertyType;
+        final int amenities;
+        final int price;
+        final int numberOfReviews;
+        final int reviewScoresRating;
+        final int bathrooms;
+        final int bathroomsText;
+        final int bedrooms;
+        final int hostId;
+        final int hostUrl;
+        final int hostName;
+        final int hostSince;
+        final int hostLocation;
+        final int hostNeighbourhood;
+        final int hostAbout;
+        final int hostResponseTime;
+        final int hostIsSuperhost;
+
+        // Columnas de las que depende cada documento (para su hash de contenido)
+        final int[] columnasPropiedad;
+        final int[] columnasHost;
+
+        // Columnas usadas que no aparecen en la cabecera (solo para avisar)
+        final List<String> faltantes = new ArrayList<>();
+
+        private EsquemaCsv(Map<String, Integer> indice, String idField) {
+            id = resolver(indice, idField);
+            listingUrl = resolver(indice, "listing_url");
+            name = resolver(indice, "name");
+            description = resolver(indice, "description");
+            neighborhoodOverview = resolver(indice, "neighborhood_overview");
+            neighbourhoodCleansed = resolver(indice, "neighbourhood_cleansed");
+            latitude = resolver(indice, "latitude");
+            longitude = resolver(indice, "longitude");
+            propertyType = resolver(indice, "property_type");
+            amenities = resolver(indice, "amenities");
+            price = resolver(indice, "price");
+            numberOfReviews = resolver(indice, "number_of_reviews");
+            reviewScoresRating = resolver(indice, "review_scores_rating");
+            bathrooms = resolver(indice, "bathrooms");
+            bathroomsText = resolver(indice, "bathrooms_text");
+            bedrooms = resolver(indice, "bedrooms");
+            hostId = resolver(indice, "host_id");
+            hostUrl = resolver(indice, "host_url");
+            hostName = resolver(indice, "host_name");
+            hostSince = resolver(indice, "host_since");
+            hostLocation = resolver(indice, "host_location");
+            hostNeighbourhood = resolver(indice, "host_neighbourhood");
+            hostAbout = resolver(indice, "host_about");
+            hostResponseTime = resolver(indice, "host_response_time");
+            hostIsSuperhost = resolver(indice, "host_is_superhost");
+
+            columnasPropiedad = new int[] { id, listingUrl, name, description, neighborhoodOverview,
+                    neighbourhoodCleansed, latitude, longitude, propertyType, amenities, price, numberOfReviews,
+                    reviewScoresRating, bathrooms, bathroomsText, bedrooms, hostId };
+            columnasHost = new int[] { hostId, hostUrl, hostName, hostSince, hostLocation, hostNeighbourhood,
+                    hostAbout, hostResponseTime, hostIsSuperhost };
+        }
+
+        /**
+         * Compila el esquema a partir de la fila de cabecera
+         */
+        static EsquemaCsv compilar(CsvRow cabecera, String idField) {
+            Map<String, Integer> indice = new HashMap<>();
+            for (int i = 0; i < cabecera.size(); i++) {
+                String nombre = cabecera.get(i);
+                if (nombre != null) {
+                    indice.put(nombre, i);
+                }
+            }
+            return new EsquemaCsv(indice, idField);
+        }
+
+        private int resolver(Map<String, Integer> indice, String columna) {
+            Integer idx = indice.get(columna);
+            if (idx == null) {
+                faltantes.add(columna);
+                return -1;
+            }
+            return idx;
+        }
+    }
+
+    /**
+     * Perfiles de ajuste de IndexWriterConfig. Cada perfil fija el buffer de RAM,
+     * la política de merge y su factor, el uso de ficheros compuestos y el límite
+     * de RAM por hilo de escritura, con valores distintos para el índice de
+     * propiedades (grande) y el de hosts. Los writers siempre se vacían por RAM,
+     * nunca por número de documentos (el valor por defecto de Lucene).
+     */
+    enum PerfilEscritura {
+        // Carga masiva: buffers grandes (pocos segmentos pequeños), tiers anchos (menos
+        // merges) y sin ficheros compuestos (no se reescribe cada segmento al final)
+        BULK(512, 128, 20, false, 1945),
+        // Actualización incremental: la configuración por defecto de Lucene, sin
+        // cambios (buffer de 16 MB, TieredMergePolicy por defecto, ficheros
+        // compuestos). Los valores solo la documentan; factorMerge no se usa
+        UPDATE(IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB, IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB, 0, true,
+                IndexWriterConfig.DEFAULT_RAM_PER_THREAD_HARD_LIMIT_MB),
+        // Poca memoria: buffers pequeños, merges por tamaño de pocos segmentos a la vez
+        // y un único merge concurrente
+        LOWMEM(16, 8, 5, true, 64);
+
+        final double ramBufferMBPropiedades;
+        final double ramBufferMBHosts;
+        final int factorMerge;
+        final boolean compoundFile;
+        final int ramPorHiloMB;
+
+        PerfilEscritura(double ramBufferMBPropiedades, double ramBufferMBHosts, int factorMerge,
+                boolean compoundFile, int ramPorHiloMB) {
+            this.ramBufferMBPropiedades = ramBufferMBPropiedades;
+            this.ramBufferMBHosts = ramBufferMBHosts;
+            this.factorMerge = factorMerge;
+            this.compoundFile = compoundFile;
+            this.ramPorHiloMB = ramPorHiloMB;
+        }
+
+        static PerfilEscritura parse(String nombre) {
+            try {
+                return valueOf(nombre.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Perfil desconocido: " + nombre + " (bulk|update|lowmem)");
+            }
+        }
+
+        /**
+         * Aplica el perfil a la configuración de un writer
+         * 
+         * @param hosts true para el índice de hosts, false para el de propiedades
+         */
+        void aplicar(IndexWriterConfig iwc, boolean hosts) {
+            if (this == UPDATE) {
+                // Se deja la configuración por defecto de IndexWriterConfig
+                return;
+            }
+            // El buffer no puede llevarse más de una cuarta parte del heap entre los dos
+            double maxHeapMB = Runtime.getRuntime().maxMemory() / (1024.0 * 1024.0);
+            double ramMB = hosts ? ramBufferMBHosts : ramBufferMBPropiedades;
+            double proporcion = ramMB / (ramBufferMBPropiedades + ramBufferMBHosts);
+            iwc.setRAMBufferSizeMB(Math.max(8, Math.min(ramMB, maxHeapMB / 4 * proporcion)));
+            iwc.setRAMPerThreadHardLimitMB(ramPorHiloMB);
+            iwc.setUseCompoundFile(compoundFile);
+
+            MergePolicy mp;
+            if (this == LOWMEM) {
+                LogByteSizeMergePolicy log = new LogByteSizeMergePolicy();
+                log.setMergeFactor(factorMerge);
+                mp = log;
+                ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
+                cms.setMaxMergesAndThreads(2, 1);
+                iwc.setMergeScheduler(cms);
+            } else {
+                TieredMergePolicy tiered = new TieredMergePolicy();
+                tiered.setSegmentsPerTier(factorMerge);
+                tiered.setMaxMergeAtOnce(factorMerge);
+                if (this == BULK) {
+                    // Los segmentos pequeños se tratan como de 64 MB: se fusionan pronto
+                    // en lugar de acumular muchos tiers diminutos
+                    tiered.setFloorSegmentMB(64);
+                }
+                mp = tiered;
+            }
+            mp.setNoCFSRatio(compoundFile ? 1.0 : 0.0);
+            iwc.setMergePolicy(mp);
+        }
+
+        /**
+         * Resumen legible de los ajustes efectivos (para el log)
+         */
+        static String describir(IndexWriterConfig iwc) {
+            MergePolicy mp = iwc.getMergePolicy();
+            String merge;
+            if (mp instanceof TieredMergePolicy t) {
+                merge = "TieredMergePolicy(segmentsPerTier=" + t.getSegmentsPerTier() + ", maxMergeAtOnce="
+                        + t.getMaxMergeAtOnce() + ", floorSegmentMB=" + t.getFloorSegmentMB() + ")";
+            } else if (mp instanceof LogMergePolicy l) {
+                merge = mp.getClass().getSimpleName() + "(mergeFactor=" + l.getMergeFactor() + ")";
+            } else {
+                merge = mp.getClass().getSimpleName();
+            }
+            return "ramBufferMB=" + String.format(Locale.ROOT, "%.0f", iwc.getRAMBufferSizeMB())
+                    + ", maxBufferedDocs="
+                    + (iwc.getMaxBufferedDocs() == IndexWriterConfig.DISABLE_AUTO_FLUSH ? "disabled"
+                            : iwc.getMaxBufferedDocs())
+                    + ", " + merge
+                    + ", compoundFile=" + iwc.getUseCompoundFile()
+                    + ", noCFSRatio=" + mp.getNoCFSRatio()
+                    + ", ramPerThreadHardLimitMB=" + iwc.getRAMPerThreadHardLimitMB();
+        }
+    }
+
+    /**
+     * Política de borrado que conserva los dos últimos commits de un índice. Si
+     * el proceso muere entre el commit del índice de propiedades y el de hosts,
+     * --resume puede volver al commit anterior del primero para que ambos partan
+     * del mismo checkpoint.
+     */
+    static final class MantenerUltimosCommits extends IndexDeletionPolicy {
+        private static final int NUM_COMMITS = 2;
+
+        @Override
+        public void onInit(List<? extends IndexCommit> commits) {
+            onCommit(commits);
+        }
+
+        @Override
+        public void onCommit(List<? extends IndexCommit> commits) {
+            for (int i = 0; i < commits.size() - NUM_COMMITS; i++) {
+                commits.get(i).delete();
+            }
+        }
+    }
+
+    /**
+     * Objetos reutilizables de un worker: se crean una vez por hilo y se usan para
+     * todas sus filas
+     */
+    private final class ContextoHilo {
+        final CsvRow fila = new CsvRow(delimiterChar());
+        final ReusableFields camposPropiedad = new ReusableFields(config.reuseFields, P_NUM_SLOTS);
+        final ReusableFields camposHost = new ReusableFields(config.reuseFields, H_NUM_SLOTS);
+        // Búsqueda del hash indexado (solo si se actualiza un índice existente)
+        final PkLookup pkPropiedades = crearPkLookup(lectorPropiedades, "id");
+        final PkLookup pkHosts = crearPkLookup(lectorHosts, "host_id");
+        final BytesRefBuilder clave = new BytesRefBuilder();
+        final IngestMetrics.Registro registro = metricas.registro();
+        // Fichero del lote actual (esquema de columnas y ciudad)
+        Entrada entrada;
+        // Posición de la fila actual (ver posicionGlobal)
+        long posicion;
+        // true al aplicar una repetición aplazada en vez de una fila del CSV
+        boolean repeticion;
+        // Destino de la fila actual
+        Destino destino;
+        // Documentos nuevos pendientes de addDocuments hasta el final del lote (una
+        // lista por destino)
+        final List<List<Document>> nuevasPropiedades = listasPorDestino();
+        final List<List<Document>> nuevosHosts = listasPorDestino();
+    }
+
+    private List<List<Document>> listasPorDestino() {
+        List<List<Document>> listas = new ArrayList<>(destinos.length);
+        for (int i = 0; i < destinos.length; i++) {
+            listas.add(new ArrayList<>());
+        }
+        return listas;
+    }
+
+    /**
+     * Writers de un destino de escritura: los índices finales o, con --shards, un
+     * fragmento temporal (que guarda también sus directorios para fusionarlo)
+     */
+    private static final class Destino {
+        final int numero;
+        final IndexWriter propiedades;
+        final IndexWriter hosts;
+        final DirectoryTaxonomyWriter taxoPropiedades;
+        final DirectoryTaxonomyWriter taxoHosts;
+        final List<Directory> directorios;
+
+        Destino(int numero, IndexWriter propiedades, IndexWriter hosts, DirectoryTaxonomyWriter taxoPropiedades,
+                DirectoryTaxonomyWriter taxoHosts, List<Directory> directorios) {
+            this.numero = numero;
+            this.propiedades = propiedades;
+            this.hosts = hosts;
+            this.taxoPropiedades = taxoPropiedades;
+            this.taxoHosts = taxoHosts;
+            this.directorios = directorios;
+        }
+    }
+
+    /**
+     * Fichero de entrada: con --input carpeta o glob hay varios, que se pueden
+     * leer a la vez, así que las columnas de la cabecera y la ciudad son de cada
+     * fichero y no del indexador
+     */
+    private static final class Entrada {
+        // Posición en el orden de los nombres (orden de las repeticiones de un id)
+        final int orden;
+        final Path ruta;
+        // Ciudad del campo city, o null si --input es un único fichero (sin campo
+        // city y con checkpoints reanudables)
+        final String ciudad;
+        // Columnas del CSV resueltas a partir de la cabecera
+        EsquemaCsv esquema;
+
+        Entrada(int orden, Path ruta, String ciudad) {
+            this.orden = orden;
+            this.ruta = ruta;
+            this.ciudad = ciudad;
+        }
+
+        boolean unica() {
+            return ciudad == null;
+        }
+
+        long tamano() {
+            try {
+                return Files.size(ruta);
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Trabajo que recibe su parte del presupuesto de hilos (ver repartirHilos)
+     */
+    @FunctionalInterface
+    private interface TareaConHilos<T> {
+        void ejecutar(T elemento, int hilos) throws Exception;
+    }
+
+    /**
+     * Fila con un id ya visto, guardada para aplicarla después (--duplicates last)
+     * 
+     * @param posicion posición global de la fila (ver posicionGlobal), para
+     *                 quedarse con la última de cada id
+     */
+    private record FilaAplazada(Entrada entrada, long posicion, String texto) {
+    }
+
+    private static PkLookup crearPkLookup(DirectoryReader lector, String campoTermino) {
+        if (lector == null) {
+            return null;
+        }
+        try {
+            return new PkLookup(lector, campoTermino, FIELD_CONTENT_HASH);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-    // Cache de hosts procesados para evitar duplicados
-    private final Map<String, Document> hostsCache = new HashMap<>();
+    /**
+     * Lote de filas CSV consecutivas que el lector entrega a los workers
+     */
+    private static final class LoteFilas {
+        // Marcador de fin de entrada (uno por worker)
+        static final LoteFilas FIN = new LoteFilas(-1, List.of(), -1, -1);
+
+        final long primeraFila;
+        final List<String> filas;
+        // Bytes [inicio, fin) del fichero que ocupan las filas (-1 si no se conocen)
+        final long inicio;
+        final long fin;
+
+        LoteFilas(long primeraFila, List<String> filas, long inicio, long fin) {
+            this.primeraFila = primeraFila;
+            this.filas = filas;
+            this.inicio = inicio;
+            this.fin = fin;
+        }
+    }
 
     /**
      * Configuración de parámetros CLI
@@ -116,14 +701,69 @@ public class AirbnbIndexador {
         String input;
         String indexRoot;
         String mode = DEFAULT_MODE;
+        String inputMode = DEFAULT_INPUT_MODE;
         String delimiter = DEFAULT_DELIMITER;
         String encoding = DEFAULT_ENCODING;
         String idField = DEFAULT_ID_FIELD;
         int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
         int maxErrors = DEFAULT_MAX_ERRORS;
         String logFile;
+        // Nivel mínimo de los mensajes (debug|info|warn|error)
+        String logLevel = DEFAULT_LOG_LEVEL;
+        // Segundos entre resúmenes de métricas en el log (0 = solo el informe final)
+        long metricsInterval = DEFAULT_METRICS_INTERVAL;
         boolean dryRun = false;
         boolean force = false;
+        boolean reuseFields = false;
+        // Perfiles de IndexWriterConfig; null = según el modo (build/rebuild -> bulk,
+        // update -> update)
+        PerfilEscritura perfilPropiedades;
+        PerfilEscritura perfilHosts;
+        // Cuándo hacer commit; null = según el modo (build/rebuild -> solo al final,
+        // update -> cada COMMIT_INTERVAL filas)
+        CommitCoordinator.Politica politicaCommit;
+        boolean resume = false;
+        // Qué fila gana cuando un id se repite en el CSV (first|last)
+        String duplicates = DEFAULT_DUPLICATES;
+        // Fragmentos temporales de la construcción en paralelo (1 = sin fragmentar)
+        int shards = 1;
+        // Orden del índice de propiedades (none|reviews|price); null = sin orden en
+        // build/rebuild, el que ya tenga el índice en update
+        String indexSort;
+        // Con varias entradas: todas en los mismos índices (shared) o unos por
+        // ciudad (per-city)
+        String target = DEFAULT_TARGET;
+
+        /**
+         * Copia para los índices de una ciudad (--target per-city)
+         */
+        Config paraCiudad(String indexRoot, int threads) {
+            Config c = new Config();
+            c.input = input;
+            c.indexRoot = indexRoot;
+            c.mode = mode;
+            c.inputMode = inputMode;
+            c.delimiter = delimiter;
+            c.encoding = encoding;
+            c.idField = idField;
+            c.threads = threads;
+            c.maxErrors = maxErrors;
+            c.logFile = logFile;
+            c.logLevel = logLevel;
+            c.metricsInterval = metricsInterval;
+            c.dryRun = dryRun;
+            c.force = force;
+            c.reuseFields = reuseFields;
+            c.perfilPropiedades = perfilPropiedades;
+            c.perfilHosts = perfilHosts;
+            c.politicaCommit = politicaCommit;
+            c.resume = resume;
+            c.duplicates = duplicates;
+            c.shards = shards;
+            c.indexSort = indexSort;
+            c.target = target;
+            return c;
+        }
     }
 
     public AirbnbIndexador(Config config) {
@@ -165,38 +805,151 @@ public class AirbnbIndexador {
     public void ejecutar() throws Exception {
         inicioTiempo.set(System.currentTimeMillis());
 
-        Logger logger = new Logger(config.logFile);
+        Logger logger = new Logger(config.logFile, Logger.nivel(config.logLevel));
         logger.info("=== Iniciando indexación Airbnb ===");
         logger.info("Input: " + config.input);
         logger.info("Index root: " + config.indexRoot);
         logger.info("Mode: " + config.mode);
+        logger.info("Input mode: " + config.inputMode);
         logger.info("Threads: " + config.threads);
+        logger.info("Reuse fields: " + config.reuseFields);
+        logger.info("Duplicates: " + config.duplicates);
+        if (config.shards > 1) {
+            logger.info("Shards: " + config.shards);
+        }
+        if (config.resume) {
+            logger.info("Resume: sí");
+        }
 
         try {
-            // Configurar índices
-            configurarIndices(logger);
+            List<Entrada> entradas = resolverEntradas(config.input);
+            if (!entradas.get(0).unica()) {
+                logger.info("Entradas: " + entradas.size() + " ficheros, target " + config.target);
+                if (config.resume) {
+                    throw new IllegalArgumentException("--resume solo admite un único fichero de entrada");
+                }
+            }
+            if ("per-city".equals(config.target) && !entradas.get(0).unica()) {
+                indexarPorCiudad(entradas, logger);
+            } else {
+                indexar(entradas, Math.max(1, config.threads), logger);
+            }
+        } finally {
+            logger.close();
+        }
+    }
+
+    /**
+     * Indexa las entradas en los índices de config.indexRoot y escribe el resumen
+     */
+    private void indexar(List<Entrada> entradas, int hilos, Logger logger) throws IOException {
+        // Configurar índices
+        configurarIndices(logger);
+        metricas.iniciarResumen(config.metricsInterval, logger::info);
 
+        try {
             // Procesar CSV
-            procesarCSV(logger);
+            procesarEntradas(entradas, hilos, logger);
 
-            // Cerrar índices
+            // Cerrar índices (espera a los merges pendientes)
+            long inicioCierre = System.nanoTime();
             cerrarIndices(logger);
+            metricas.registro().anotar(IngestMetrics.Etapa.CIERRE, inicioCierre);
+        } finally {
+            escribirMetricas(entradas, hilos, logger);
+        }
 
-            // Resumen final
-            long tiempoTotal = System.currentTimeMillis() - inicioTiempo.get();
-            logger.info("=== Indexación completada ===");
-            logger.info("Propiedades indexadas: " + totalPropiedades.get());
-            logger.info("Hosts indexados: " + totalHosts.get());
-            logger.info("Errores: " + errores.get());
-            logger.info("Tiempo total: " + tiempoTotal + " ms");
+        // Resumen final
+        long tiempoTotal = System.currentTimeMillis() - inicioTiempo.get();
+        logger.info("=== Indexación completada ===");
+        logger.info("Propiedades indexadas: " + totalPropiedades.get());
+        logger.info("Hosts indexados: " + totalHosts.get());
+        logger.info("Hosts únicos en memoria: " + (hostsVistos.size() + hostsVistosTexto.size())
+                + " (" + (hostsVistos.ramBytesUsed() / 1024) + " KB en el conjunto de ids numéricos, "
+                + hostsVistosTexto.size() + " ids no numéricos)");
+        if (lectorPropiedades != null || lectorHosts != null) {
+            logger.info("Propiedades sin cambios / actualizadas / nuevas: " + propiedadesSinCambios.sum()
+                    + " / " + propiedadesActualizadas.sum() + " / " + propiedadesNuevas.sum());
+            logger.info("Hosts sin cambios / actualizados / nuevos: " + hostsSinCambios.sum() + " / "
+                    + hostsActualizados.sum() + " / " + hostsNuevos.sum());
+        }
+        logger.info("Amenities distintas: " + AMENIDADES.size());
+        logger.info(String.format(Locale.ROOT, "Caché de tokens: %.1f%% aciertos", cacheTokens.porcentajeAciertos()));
+        logger.info("Filas con id repetido: " + propiedadesRepetidas.sum() + " (gana la "
+                + ("first".equals(config.duplicates) ? "primera" : "última") + ")");
+        logger.info("Errores: " + errores.get());
+        logger.info("Tiempo total: " + tiempoTotal + " ms");
+
+        if (errores.get() > config.maxErrors) {
+            logger.error("Superado max-errors (" + config.maxErrors + "). Abortando.");
+            throw new RuntimeException("Demasiados errores: " + errores.get());
+        }
+    }
 
-            if (errores.get() > config.maxErrors) {
-                logger.error("Superado max-errors (" + config.maxErrors + "). Abortando.");
-                throw new RuntimeException("Demasiados errores: " + errores.get());
-            }
+    /**
+     * Escribe el último resumen de métricas en el log y el informe JSON en
+     * index-root (también si la ingesta ha fallado: dice hasta dónde llegó)
+     */
+    private void escribirMetricas(List<Entrada> entradas, int hilos, Logger logger) {
+        metricas.detener();
+        logger.info(metricas.resumenTotal());
+        Map<String, String> contexto = new LinkedHashMap<>();
+        contexto.put("input", entradas.size() == 1 ? entradas.get(0).ruta.toString() : config.input);
+        contexto.put("files", Integer.toString(entradas.size()));
+        contexto.put("mode", config.mode);
+        contexto.put("input_mode", config.inputMode);
+        contexto.put("threads", Integer.toString(hilos));
+        contexto.put("shards", Integer.toString(config.shards));
+        contexto.put("dry_run", Boolean.toString(config.dryRun));
+        Path fichero = Paths.get(config.indexRoot).resolve(FICHERO_METRICAS);
+        try {
+            metricas.escribirInforme(fichero, contexto);
+            logger.info("Métricas de la ingesta: " + fichero);
+        } catch (IOException e) {
+            logger.warn("No se pudo escribir " + fichero + ": " + e.getMessage());
+        }
+    }
 
-        } finally {
-            logger.close();
+    /**
+     * --target per-city: unos índices por ciudad en index-root/<ciudad>/, cada
+     * uno con su propio indexador. Se indexan varias ciudades a la vez
+     * repartiendo --threads entre ellas; si una falla, las demás terminan y el
+     * error se informa al final.
+     */
+    private void indexarPorCiudad(List<Entrada> entradas, Logger logger) throws IOException {
+        Map<String, List<Entrada>> porCiudad = new TreeMap<>();
+        for (Entrada e : entradas) {
+            porCiudad.computeIfAbsent(e.ciudad, c -> new ArrayList<>()).add(e);
+        }
+        // Las ciudades más grandes primero, para no dejar la mayor para el final
+        List<String> ciudades = new ArrayList<>(porCiudad.keySet());
+        ciudades.sort(Comparator.comparingLong(
+                (String c) -> porCiudad.get(c).stream().mapToLong(Entrada::tamano).sum()).reversed());
+
+        List<Future<?>> tareas = repartirHilos(ciudades, Math.max(1, config.threads), "indexador-ciudad",
+                (ciudad, hilos) -> {
+                    String raiz = Paths.get(config.indexRoot).resolve(ciudad).toString();
+                    Logger loggerCiudad = logger.conPrefijo("[" + ciudad + "] ");
+                    loggerCiudad.info("Índices en " + raiz + " (" + porCiudad.get(ciudad).size() + " ficheros, "
+                            + hilos + " hilos)");
+                    AirbnbIndexador indexador = new AirbnbIndexador(config.paraCiudad(raiz, hilos));
+                    indexador.inicioTiempo.set(System.currentTimeMillis());
+                    indexador.indexar(porCiudad.get(ciudad), hilos, loggerCiudad);
+                });
+
+        List<String> fallidas = new ArrayList<>();
+        for (int i = 0; i < tareas.size(); i++) {
+            try {
+                esperarWorkers(List.of(tareas.get(i)));
+            } catch (IOException e) {
+                logger.error("[" + ciudades.get(i) + "] " + e.getMessage());
+                fallidas.add(ciudades.get(i));
+            }
+        }
+        logger.info("=== Indexación por ciudad completada: " + (ciudades.size() - fallidas.size()) + " de "
+                + ciudades.size() + " ciudades en " + (System.currentTimeMillis() - inicioTiempo.get()) + " ms ===");
+        if (!fallidas.isEmpty()) {
+            throw new IOException("Fallaron " + fallidas.size() + " ciudades: " + fallidas);
         }
     }
 
@@ -214,8 +967,8 @@ public class AirbnbIndexador {
         Path taxoPathProperties = indexRootPath.resolve(INDEX_TAXO_PROPERTIES);
         Path taxoPathHosts = indexRootPath.resolve(INDEX_TAXO_HOSTS);
 
-        // Crear analizadores por campo
-        Analyzer analyzer = crearAnalizador();
+        // Analizadores por campo
+        Analyzer analyzer = analizador;
 
         // Configurar FacetsConfig
         facetsConfig = createFacetsConfig();
@@ -237,10 +990,66 @@ public class AirbnbIndexador {
             openMode = IndexWriterConfig.OpenMode.CREATE_OR_APPEND;
         }
 
+        Directory dirProperties = FSDirectory.open(indexPathProperties);
+        Directory dirHosts = FSDirectory.open(indexPathHosts);
+
+        // Reanudación: se continúa sobre los índices existentes desde su checkpoint
+        IndexCommit commitProperties = null;
+        IndexCommit commitHosts = null;
+        if (config.resume) {
+            if (!DirectoryReader.indexExists(dirProperties) || !DirectoryReader.indexExists(dirHosts)) {
+                throw new IOException("No hay índices que reanudar en " + indexRootPath.toAbsolutePath());
+            }
+            List<IndexCommit> commitsProperties = DirectoryReader.listCommits(dirProperties);
+            List<IndexCommit> commitsHosts = DirectoryReader.listCommits(dirHosts);
+            // Si el proceso murió entre los dos commits, el de propiedades va una
+            // generación por delante: se vuelve a la común
+            long generacion = Math.min(generacion(commitsProperties.get(commitsProperties.size() - 1)),
+                    generacion(commitsHosts.get(commitsHosts.size() - 1)));
+            if (generacion == 0) {
+                throw new IOException("Los índices no tienen datos de checkpoint; no se puede reanudar");
+            }
+            commitProperties = buscarCommit(commitsProperties, generacion);
+            commitHosts = buscarCommit(commitsHosts, generacion);
+            checkpoint = commitHosts.getUserData();
+            openMode = IndexWriterConfig.OpenMode.APPEND;
+            logger.info("Reanudando desde el checkpoint " + generacion + ": byte "
+                    + checkpoint.get(CommitCoordinator.OFFSET) + ", " + checkpoint.get(CommitCoordinator.FILAS)
+                    + " filas");
+        }
+
+        // Perfil de escritura de cada índice (por defecto según el modo)
+        PerfilEscritura perfilPorModo = "update".equals(config.mode) ? PerfilEscritura.UPDATE
+                : PerfilEscritura.BULK;
+        PerfilEscritura perfilPropiedades = config.perfilPropiedades != null ? config.perfilPropiedades
+                : perfilPorModo;
+        PerfilEscritura perfilHosts = config.perfilHosts != null ? config.perfilHosts : perfilPorModo;
+
+        // Orden del índice de propiedades: al actualizar se mantiene el que ya tiene
+        ordenPropiedades = config.indexSort != null ? ordenIndice(config.indexSort) : null;
+        if (openMode != IndexWriterConfig.OpenMode.CREATE && DirectoryReader.indexExists(dirProperties)) {
+            Sort existente = ordenExistente(dirProperties);
+            if (config.indexSort != null && !Objects.equals(existente, ordenPropiedades)) {
+                throw new IOException("El índice de propiedades está ordenado por " + existente
+                        + "; para cambiar --index-sort hay que reconstruirlo con --mode rebuild --force");
+            }
+            ordenPropiedades = existente;
+        }
+        if (ordenPropiedades != null) {
+            logger.info("Orden del índice de propiedades: " + ordenPropiedades);
+        }
+
         // Crear writers
         IndexWriterConfig iwcProperties = new IndexWriterConfig(analyzer);
         iwcProperties.setOpenMode(openMode);
-        Directory dirProperties = FSDirectory.open(indexPathProperties);
+        perfilPropiedades.aplicar(iwcProperties, false);
+        if (ordenPropiedades != null) {
+            iwcProperties.setIndexSort(ordenPropiedades);
+        }
+        iwcProperties.setIndexDeletionPolicy(new MantenerUltimosCommits());
+        iwcProperties.setIndexCommit(commitProperties);
+        logger.info("Perfil " + perfilPropiedades.name().toLowerCase(Locale.ROOT) + " (" + INDEX_PROPERTIES + "): "
+                + PerfilEscritura.describir(iwcProperties));
         writerProperties = new IndexWriter(dirProperties, iwcProperties);
 
         Directory dirTaxoProperties = FSDirectory.open(taxoPathProperties);
@@ -248,15 +1057,281 @@ public class AirbnbIndexador {
 
         IndexWriterConfig iwcHosts = new IndexWriterConfig(analyzer);
         iwcHosts.setOpenMode(openMode);
-        Directory dirHosts = FSDirectory.open(indexPathHosts);
+        perfilHosts.aplicar(iwcHosts, true);
+        iwcHosts.setIndexDeletionPolicy(new MantenerUltimosCommits());
+        iwcHosts.setIndexCommit(commitHosts);
+        logger.info("Perfil " + perfilHosts.name().toLowerCase(Locale.ROOT) + " (" + INDEX_HOSTS + "): "
+                + PerfilEscritura.describir(iwcHosts));
         writerHosts = new IndexWriter(dirHosts, iwcHosts);
 
         Directory dirTaxoHosts = FSDirectory.open(taxoPathHosts);
         taxoWriterHosts = new DirectoryTaxonomyWriter(dirTaxoHosts);
 
+        if (config.shards > 1) {
+            raizFragmentos = indexRootPath.resolve(DIR_FRAGMENTOS);
+            destinos = crearFragmentos(config.shards, analyzer, perfilPropiedades, perfilHosts);
+            logger.info(config.shards + " fragmentos temporales en " + raizFragmentos.toAbsolutePath()
+                    + " (se fusionan al final con addIndexes)");
+        } else {
+            destinos = new Destino[] { new Destino(0, writerProperties, writerHosts, taxoWriterProperties,
+                    taxoWriterHosts, List.of()) };
+        }
+
+        // Foto de los índices existentes para detectar filas sin cambios
+        if (openMode != IndexWriterConfig.OpenMode.CREATE) {
+            lectorPropiedades = abrirSiNoVacio(writerProperties);
+            lectorHosts = abrirSiNoVacio(writerHosts);
+            // Un índice anterior a la clave primaria solo tiene "id" como IntPoint, y
+            // Lucene no admite añadir términos a un campo que no los tenía
+            if (lectorPropiedades != null && sinTerminos(lectorPropiedades, "id")) {
+                throw new IOException("El índice de propiedades no tiene la clave primaria \"id\";"
+                        + " hay que reconstruirlo con --mode rebuild --force");
+            }
+            if (lectorPropiedades != null || lectorHosts != null) {
+                logger.info("Detección de cambios activa: se omiten las filas con el mismo "
+                        + FIELD_CONTENT_HASH + " que el documento indexado");
+            }
+        }
+        if (lectorPropiedades == null) {
+            // Índice vacío: ninguna fila tiene que sustituir a un documento anterior
+            logger.info("Índice de propiedades vacío: solo addDocument"
+                    + (config.reuseFields || ordenPropiedades != null ? "" : ", agrupados en addDocuments por lote")
+                    + " (sin términos de borrado)");
+        }
+
+        CommitCoordinator.Politica politica = config.politicaCommit != null ? config.politicaCommit
+                : "update".equals(config.mode) ? new CommitCoordinator.Politica(0, 0, 0, COMMIT_INTERVAL)
+                        : CommitCoordinator.Politica.FINAL;
+        commits = new CommitCoordinator(writerProperties, writerHosts, taxoWriterProperties, taxoWriterHosts,
+                politica);
+        commits.antesDeCommit(() -> aplicarRepeticiones(logger));
+        logger.info("Política de commit: " + politica);
+
+        if (checkpoint != null) {
+            commits.continuarDesde(CommitCoordinator.leerLong(checkpoint, CommitCoordinator.FILAS, 0));
+            // Los hosts ya indexados no se vuelven a escribir
+            logger.info("Hosts ya indexados: " + cargarHostsIndexados());
+        }
+
         logger.info("Índices configurados correctamente");
     }
 
+    /**
+     * Crea los fragmentos de --shards, cada uno con sus dos índices y sus dos
+     * taxonomías. El buffer de RAM del perfil se reparte entre los fragmentos.
+     */
+    private Destino[] crearFragmentos(int n, Analyzer analyzer, PerfilEscritura perfilPropiedades,
+            PerfilEscritura perfilHosts) throws IOException {
+        deleteDirectory(raizFragmentos);
+        Destino[] fragmentos = new Destino[n];
+        for (int i = 0; i < n; i++) {
+            Path raiz = raizFragmentos.resolve("shard-" + i);
+            Directory dirP = FSDirectory.open(raiz.resolve(INDEX_PROPERTIES));
+            Directory dirH = FSDirectory.open(raiz.resolve(INDEX_HOSTS));
+            Directory dirTaxoP = FSDirectory.open(raiz.resolve(INDEX_TAXO_PROPERTIES));
+            Directory dirTaxoH = FSDirectory.open(raiz.resolve(INDEX_TAXO_HOSTS));
+
+            IndexWriterConfig iwcP = new IndexWriterConfig(analyzer);
+            iwcP.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+            perfilPropiedades.aplicar(iwcP, false);
+            iwcP.setRAMBufferSizeMB(Math.max(8, iwcP.getRAMBufferSizeMB() / n));
+            if (ordenPropiedades != null) {
+                // Segmentos ya ordenados: addIndexes no tiene que reordenarlos al fusionar
+                iwcP.setIndexSort(ordenPropiedades);
+            }
+            IndexWriterConfig iwcH = new IndexWriterConfig(analyzer);
+            iwcH.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+            perfilHosts.aplicar(iwcH, true);
+            iwcH.setRAMBufferSizeMB(Math.max(8, iwcH.getRAMBufferSizeMB() / n));
+
+            fragmentos[i] = new Destino(i, new IndexWriter(dirP, iwcP), new IndexWriter(dirH, iwcH),
+                    new DirectoryTaxonomyWriter(dirTaxoP), new DirectoryTaxonomyWriter(dirTaxoH),
+                    List.of(dirP, dirH, dirTaxoP, dirTaxoH));
+        }
+        return fragmentos;
+    }
+
+    /**
+     * Fragmento al que va una fila: por hash del id, así que todas las
+     * apariciones de un id van al mismo
+     */
+    private Destino destino(String idStr) {
+        if (destinos.length == 1) {
+            return destinos[0];
+        }
+        long idNum = parseIdNumerico(idStr);
+        int h = LongHashSet.hash(idNum >= 0 ? idNum : idStr.hashCode());
+        return destinos[Math.floorMod(h, destinos.length)];
+    }
+
+    /**
+     * Une los fragmentos en los índices finales. La taxonomía de cada fragmento se
+     * añade a la final con addTaxonomy, que deja en un OrdinalMap el ordinal
+     * final de cada categoría; después los segmentos de todos los fragmentos se
+     * añaden con un único addIndexes por índice, envueltos en un
+     * OrdinalMappingLeafReader que traduce los ordinales de faceta de cada
+     * documento.
+     */
+    private void fusionarFragmentos(Logger logger) throws IOException {
+        long inicio = System.nanoTime();
+        List<CodecReader> propiedades = new ArrayList<>();
+        List<CodecReader> hosts = new ArrayList<>();
+        List<DirectoryReader> abiertos = new ArrayList<>();
+        try {
+            for (Destino f : destinos) {
+                // Taxonomías primero, igual que en los commits
+                IOUtils.close(f.taxoPropiedades, f.taxoHosts, f.propiedades, f.hosts);
+                propiedades.addAll(segmentosTraducidos(f.directorios.get(0), f.directorios.get(2),
+                        taxoWriterProperties, abiertos));
+                hosts.addAll(segmentosTraducidos(f.directorios.get(1), f.directorios.get(3), taxoWriterHosts,
+                        abiertos));
+            }
+            writerProperties.addIndexes(propiedades.toArray(new CodecReader[0]));
+            writerHosts.addIndexes(hosts.toArray(new CodecReader[0]));
+        } finally {
+            IOUtils.close(abiertos);
+        }
+        logger.info("Fragmentos fusionados: " + propiedades.size() + " segmentos de propiedades y " + hosts.size()
+                + " de hosts en " + (System.nanoTime() - inicio) / 1_000_000 + " ms");
+        borrarFragmentos();
+    }
+
+    private List<CodecReader> segmentosTraducidos(Directory dirIndice, Directory dirTaxo,
+            DirectoryTaxonomyWriter taxoFinal, List<DirectoryReader> abiertos) throws IOException {
+        DirectoryTaxonomyWriter.MemoryOrdinalMap mapa = new DirectoryTaxonomyWriter.MemoryOrdinalMap();
+        taxoFinal.addTaxonomy(dirTaxo, mapa);
+        int[] ordinales = mapa.getMap();
+
+        DirectoryReader lector = DirectoryReader.open(dirIndice);
+        abiertos.add(lector);
+        List<CodecReader> segmentos = new ArrayList<>();
+        for (LeafReaderContext hoja : lector.leaves()) {
+            segmentos.add(SlowCodecReaderWrapper.wrap(
+                    new OrdinalMappingLeafReader(hoja.reader(), ordinales, facetsConfig)));
+        }
+        return segmentos;
+    }
+
+    /**
+     * Cierra (sin confirmar) los fragmentos que sigan abiertos y borra su carpeta
+     */
+    private void borrarFragmentos() throws IOException {
+        if (raizFragmentos == null) {
+            return;
+        }
+        for (Destino f : destinos) {
+            // Tras fusionarlos ya están cerrados y rollback/close no hacen nada
+            f.propiedades.rollback();
+            f.hosts.rollback();
+            IOUtils.close(f.taxoPropiedades, f.taxoHosts);
+            IOUtils.close(f.directorios);
+        }
+        deleteDirectory(raizFragmentos);
+        raizFragmentos = null;
+    }
+
+    /**
+     * Orden de índice de --index-sort. Las búsquedas ordenadas usan estos mismos
+     * SortField: si coinciden con el orden del índice, cada segmento deja de
+     * recoger documentos en cuanto tiene los k primeros.
+     * 
+     * @return el orden, o null para "none"
+     */
+    public static Sort ordenIndice(String nombre) {
+        return switch (nombre.trim().toLowerCase(Locale.ROOT)) {
+            case "none" -> null;
+            case "reviews" -> new Sort(ordenPorReviews());
+            case "price" -> new Sort(ordenPorPrecio());
+            default -> throw new IllegalArgumentException("Orden de índice desconocido: " + nombre
+                    + " (none|reviews|price)");
+        };
+    }
+
+    /**
+     * number_of_reviews descendente (más reseñas primero)
+     */
+    public static SortField ordenPorReviews() {
+        return new SortField("number_of_reviews", SortField.Type.INT, true);
+    }
+
+    /**
+     * price ascendente (más barato primero); las propiedades sin precio, al final
+     */
+    public static SortField ordenPorPrecio() {
+        SortField orden = new SortField("price", SortField.Type.DOUBLE, false);
+        orden.setMissingValue(Double.MAX_VALUE);
+        return orden;
+    }
+
+    /**
+     * Orden con el que se creó un índice existente (null si no tiene)
+     */
+    private static Sort ordenExistente(Directory dir) throws IOException {
+        for (SegmentCommitInfo info : SegmentInfos.readLatestCommit(dir)) {
+            if (info.info.getIndexSort() != null) {
+                return info.info.getIndexSort();
+            }
+        }
+        return null;
+    }
+
+    private static DirectoryReader abrirSiNoVacio(IndexWriter writer) throws IOException {
+        DirectoryReader lector = DirectoryReader.open(writer);
+        if (lector.numDocs() == 0) {
+            lector.close();
+            return null;
+        }
+        return lector;
+    }
+
+    private static boolean sinTerminos(DirectoryReader lector, String campo) throws IOException {
+        for (LeafReaderContext leaf : lector.leaves()) {
+            if (leaf.reader().terms(campo) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long generacion(IndexCommit commit) throws IOException {
+        return CommitCoordinator.leerLong(commit.getUserData(), CommitCoordinator.GENERACION, 0);
+    }
+
+    private static IndexCommit buscarCommit(List<IndexCommit> commits, long generacion) throws IOException {
+        for (IndexCommit c : commits) {
+            if (generacion(c) == generacion) {
+                return c;
+            }
+        }
+        throw new IOException("No se encuentra el checkpoint " + generacion + " en " + commits.get(0).getDirectory());
+    }
+
+    /**
+     * Marca como vistos los host_id que ya están en el índice de hosts
+     * 
+     * @return número de hosts cargados
+     */
+    private int cargarHostsIndexados() throws IOException {
+        int n = 0;
+        try (DirectoryReader reader = DirectoryReader.open(writerHosts)) {
+            for (LeafReaderContext leaf : reader.leaves()) {
+                Terms terms = leaf.reader().terms("host_id");
+                if (terms == null) {
+                    continue;
+                }
+                TermsEnum te = terms.iterator();
+                BytesRef term;
+                while ((term = te.next()) != null) {
+                    String hostId = term.utf8ToString();
+                    if (marcarHostVisto(parseIdNumerico(hostId), hostId)) {
+                        n++;
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
     private void deleteDirectory(Path path) {
         if (Files.exists(path)) {
             try {
@@ -274,62 +1349,23 @@ public class AirbnbIndexador {
         }
     }
 
-    /**
-     * Crea el analizador con configuración por campo
-     * Método público y estático para ser reutilizado en búsquedas
-     */
-    public static Analyzer crearAnalizador() {
-        Analyzer defaultAnalyzer = new StandardAnalyzer();
-        Map<String, Analyzer> perField = new HashMap<>();
-
-        // Campos en inglés
-        perField.put("description", new EnglishAnalyzer());
-        perField.put("neighborhood_overview", new EnglishAnalyzer());
-        perField.put("host_about", new EnglishAnalyzer());
-        perField.put("host_location", new EnglishAnalyzer());
-        perField.put(FIELD_CONTENTS, new EnglishAnalyzer());
-        perField.put("amenity", new EnglishAnalyzer());
-        perField.put("bathrooms_text", new EnglishAnalyzer());
-
-        // Analyzer personalizado para campos categóricos: keyword + lowercase
-        Analyzer lowercaseKeywordAnalyzer = new Analyzer() {
-            @Override
-            protected TokenStreamComponents createComponents(String fieldName) {
-                KeywordTokenizer tokenizer = new KeywordTokenizer();
-                TokenStream filter = new LowerCaseFilter(tokenizer);
-                return new TokenStreamComponents(tokenizer, filter);
-            }
-        };
-
-        // Campos categóricos (keyword + lowercase para case-insensitive)
-        perField.put("neighbourhood_cleansed", lowercaseKeywordAnalyzer);
-        perField.put("property_type", lowercaseKeywordAnalyzer);
-        perField.put("host_response_time", lowercaseKeywordAnalyzer);
-
-        return new PerFieldAnalyzerWrapper(defaultAnalyzer, perField);
-    }
-
     /**
      * Define rangos para la faceta host_since
      */
     public static LongRange[] getHostSinceRanges() {
-        try {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-            long t1 = sdf.parse("2008-01-01").getTime();
-            long t2 = sdf.parse("2015-01-01").getTime();
-            long t3 = sdf.parse("2015-01-02").getTime();
-            long t4 = sdf.parse("2020-01-01").getTime();
-            long t5 = sdf.parse("2020-01-02").getTime();
-            long t6 = sdf.parse("2026-01-01").getTime();
-
-            return new LongRange[] {
-                    new LongRange("2008-2015", t1, true, t2, true),
-                    new LongRange("2015-2020", t3, true, t4, true),
-                    new LongRange("2020-2026", t5, true, t6, true)
-            };
-        } catch (ParseException e) {
-            throw new RuntimeException("Error parseando fechas de rangos", e);
-        }
+        // Mismo criterio que el campo indexado: inicio del día en UTC
+        long t1 = FieldParsers.fecha("2008-01-01");
+        long t2 = FieldParsers.fecha("2015-01-01");
+        long t3 = FieldParsers.fecha("2015-01-02");
+        long t4 = FieldParsers.fecha("2020-01-01");
+        long t5 = FieldParsers.fecha("2020-01-02");
+        long t6 = FieldParsers.fecha("2026-01-01");
+
+        return new LongRange[] {
+                new LongRange("2008-2015", t1, true, t2, true),
+                new LongRange("2015-2020", t3, true, t4, true),
+                new LongRange("2020-2026", t5, true, t6, true)
+        };
     }
 
     /**
@@ -388,499 +1424,1464 @@ public class AirbnbIndexador {
     }
 
     /**
-     * Procesa el CSV en modo streaming
+     * Ficheros de --input: un fichero, una carpeta (sus .csv, .csv.gz y .csv.zst,
+     * también en subcarpetas) o un patrón glob (los ficheros que encajan, sea cual
+     * sea su extensión). Con carpeta o glob cada fichero lleva su ciudad.
      * 
-     * Asume:
-     * - Un único archivo CSV (no procesa directorios)
-     * - El archivo viene de config.input (ej: listings.csv)
-     * - El parser CSV robusto es necesario porque campos como "Los Angeles, CA"
-     * y descripciones pueden contener comas dentro de comillas dobles
-     * - Maneja filas multi-línea cuando campos contienen saltos de línea dentro de
-     * comillas
+     * @return las entradas ordenadas por ruta
      */
-    private void procesarCSV(Logger logger) throws IOException {
-        Path csvPath = Paths.get(config.input);
-        if (!Files.exists(csvPath)) {
-            throw new IOException("Input no existe: " + csvPath.toAbsolutePath());
+    private static List<Entrada> resolverEntradas(String input) throws IOException {
+        boolean glob = esGlob(input);
+        Path ruta = glob ? null : Paths.get(input);
+        if (!glob && !Files.isDirectory(ruta)) {
+            // Un único fichero: procesarCSV comprueba que exista
+            return List.of(new Entrada(0, ruta, null));
+        }
+
+        List<Path> ficheros;
+        if (glob) {
+            // Se recorre desde la parte fija del patrón (la anterior al primer comodín)
+            String[] partes = input.split("/", -1);
+            int fija = 0;
+            while (fija < partes.length - 1 && !esGlob(partes[fija])) {
+                fija++;
+            }
+            String fijo = String.join("/", Arrays.copyOf(partes, fija));
+            boolean relativo = fijo.isEmpty() && !input.startsWith("/");
+            Path base = Paths.get(relativo ? "." : fijo.isEmpty() ? "/" : fijo);
+            if (!Files.isDirectory(base)) {
+                throw new IOException("Input no existe: " + base.toAbsolutePath());
+            }
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input);
+            try (Stream<Path> paths = Files.walk(base)) {
+                ficheros = paths.filter(Files::isRegularFile)
+                        // Desde "." Files.walk devuelve "./x", y el patrón es relativo
+                        .map(p -> relativo ? base.relativize(p) : p)
+                        .filter(matcher::matches)
+                        .sorted()
+                        .toList();
+            }
+        } else {
+            try (Stream<Path> paths = Files.walk(ruta)) {
+                ficheros = paths.filter(Files::isRegularFile)
+                        .filter(p -> esCsv(p.getFileName().toString()))
+                        .sorted()
+                        .toList();
+            }
+        }
+        if (ficheros.isEmpty()) {
+            throw new IOException("No hay ficheros CSV en " + input);
+        }
+        List<Entrada> entradas = new ArrayList<>();
+        for (Path f : ficheros) {
+            entradas.add(new Entrada(entradas.size(), f, ciudad(f.toAbsolutePath().normalize())));
+        }
+        return entradas;
+    }
+
+    private static boolean esGlob(String s) {
+        return s.indexOf('*') >= 0 || s.indexOf('?') >= 0 || s.indexOf('[') >= 0 || s.indexOf('{') >= 0;
+    }
+
+    private static boolean esCsv(String nombre) {
+        String n = nombre.toLowerCase(Locale.ROOT);
+        return n.endsWith(".csv") || n.endsWith(".csv.gz") || n.endsWith(".csv.zst");
+    }
+
+    /**
+     * Ciudad de un fichero: su nombre sin extensiones (los-angeles.csv.gz) o, si
+     * es genérico como en Inside Airbnb (los-angeles/2025-06-17/data/listings.csv.gz),
+     * la primera carpeta hacia arriba que no lo sea. En minúsculas.
+     */
+    static String ciudad(Path fichero) {
+        String nombre = sinExtensiones(fichero.getFileName().toString());
+        for (Path p = fichero; p != null; p = p.getParent()) {
+            if (p.getFileName() == null) {
+                continue;
+            }
+            String n = sinExtensiones(p.getFileName().toString());
+            if (!nombreGenerico(n)) {
+                return n.toLowerCase(Locale.ROOT);
+            }
+        }
+        return nombre.toLowerCase(Locale.ROOT);
+    }
+
+    private static String sinExtensiones(String nombre) {
+        String n = nombre;
+        for (String ext : new String[] { ".gz", ".zst", ".csv" }) {
+            if (n.toLowerCase(Locale.ROOT).endsWith(ext)) {
+                n = n.substring(0, n.length() - ext.length());
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Nombres que no identifican una ciudad: los de los ficheros y carpetas de
+     * Inside Airbnb y las fechas de cada foto (solo dígitos y separadores)
+     */
+    private static boolean nombreGenerico(String nombre) {
+        String n = nombre.toLowerCase(Locale.ROOT);
+        if (n.isEmpty() || n.equals("listings") || n.equals("data") || n.equals("visualisations")) {
+            return true;
+        }
+        for (int i = 0; i < n.length(); i++) {
+            char c = n.charAt(i);
+            if ((c < '0' || c > '9') && c != '-' && c != '_' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ejecuta una tarea por elemento repartiendo un presupuesto global de hilos:
+     * como mucho min(elementos, presupuesto) a la vez, cada una con su parte del
+     * presupuesto (las primeras, un hilo más si no es divisible). Al terminar una
+     * tarea, la siguiente hereda sus hilos.
+     * 
+     * @return una Future por elemento, en el mismo orden
+     */
+    private static <T> List<Future<?>> repartirHilos(List<T> elementos, int presupuesto, String prefijo,
+            TareaConHilos<T> tarea) {
+        int aLaVez = Math.max(1, Math.min(elementos.size(), presupuesto));
+        BlockingQueue<Integer> cupos = new ArrayBlockingQueue<>(aLaVez);
+        for (int i = 0; i < aLaVez; i++) {
+            cupos.add(Math.max(1, presupuesto / aLaVez + (i < presupuesto % aLaVez ? 1 : 0)));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(aLaVez, nuevaFactoriaHilos(prefijo));
+        List<Future<?>> tareas = new ArrayList<>();
+        try {
+            for (T elemento : elementos) {
+                tareas.add(pool.submit(() -> {
+                    int hilos = cupos.take();
+                    try {
+                        tarea.ejecutar(elemento, hilos);
+                    } finally {
+                        cupos.add(hilos);
+                    }
+                    return null;
+                }));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return tareas;
+    }
+
+    /**
+     * Procesa las entradas. Un único fichero va por procesarCSV con sus
+     * checkpoints reanudables. Con varios se procesan a la vez (los más grandes
+     * primero) repartiendo los hilos; todos escriben en los mismos writers, que
+     * son thread-safe, con los mismos conjuntos de hosts e ids vistos y las
+     * mismas taxonomías. Los commits intermedios no guardan posición (offset -1)
+     * y el commit final se hace cuando han terminado todos.
+     */
+    private void procesarEntradas(List<Entrada> entradas, int hilos, Logger logger) throws IOException {
+        AtomicBoolean abortar = new AtomicBoolean(false);
+        if (entradas.size() == 1 && entradas.get(0).unica()) {
+            procesarCSV(entradas.get(0), hilos, abortar, logger);
+            return;
+        }
+        commits.iniciar(config.input, () -> -1, () -> null, abortar::get);
+
+        List<Entrada> porTamano = new ArrayList<>(entradas);
+        porTamano.sort(Comparator.comparingLong(Entrada::tamano).reversed());
+        List<Future<?>> tareas = repartirHilos(porTamano, hilos, "indexador-fichero", (entrada, n) -> {
+            logger.info("Entrada " + entrada.ruta + " (ciudad " + entrada.ciudad + ", " + n + " hilos)");
+            try {
+                procesarCSV(entrada, n, abortar, logger);
+            } catch (Exception e) {
+                // Los demás ficheros dejan de leer cuanto antes
+                abortar.set(true);
+                throw e;
+            }
+        });
+        esperarWorkers(tareas);
+
+        if (abortar.get()) {
+            throw new RuntimeException("Demasiados errores. Abortando.");
+        }
+        // Commit final de todos los ficheros
+        confirmarIngesta(logger);
+    }
+
+    /**
+     * Procesa el CSV en modo streaming
+     * 
+     * Asume:
+     * - Un archivo CSV de config.input (ej: listings.csv), o uno de sus ficheros
+     * si es una carpeta o un glob (ver procesarEntradas)
+     * - El parser CSV robusto es necesario porque campos como "Los Angeles, CA"
+     * y descripciones pueden contener comas dentro de comillas dobles
+     * - Maneja filas multi-línea cuando campos contienen saltos de línea dentro de
+     * comillas
+     * 
+     * Pipeline: el hilo llamante lee filas completas y las agrupa en lotes que
+     * deja en una cola acotada; un pool de config.threads hilos parsea cada fila,
+     * construye los documentos (y sus facetas) y escribe concurrentemente en los
+     * IndexWriter, que son thread-safe.
+     * 
+     * Commits: los lotes salen de la cola en orden y cada worker procesa el suyo
+     * dentro de commits.entrar()/salir(), así que con los workers en pausa los
+     * lotes terminados son exactamente los primeros y el byte final del último
+     * es un punto de reanudación exacto.
+     * 
+     * @param numHilos workers de este fichero
+     * @param abortar  se activa al superar max-errors (compartido por todos los
+     *                 ficheros de la ingesta)
+     */
+    private void procesarCSV(Entrada entrada, int numHilos, AtomicBoolean abortar, Logger logger)
+            throws IOException {
+        Path csvPath = entrada.ruta;
+        if (!Files.exists(csvPath)) {
+            throw new IOException("Input no existe: " + csvPath.toAbsolutePath());
+        }
+
+        Charset charset = Charset.forName(config.encoding);
+        // Entrada comprimida: las posiciones de los checkpoints son de los bytes ya
+        // descomprimidos
+        String compresion = compresion(csvPath);
+
+        boolean reanudando = checkpoint != null;
+        if (reanudando) {
+            if (Boolean.parseBoolean(checkpoint.get(CommitCoordinator.COMPLETO))) {
+                logger.info("El checkpoint ya cubre todo el archivo: nada que reanudar");
+                return;
+            }
+            String origen = checkpoint.get(CommitCoordinator.ORIGEN);
+            if (origen != null && !origen.equals(csvPath.toAbsolutePath().toString())) {
+                throw new IOException("El checkpoint es de otro archivo: " + origen);
+            }
+            if (compresion == null
+                    && CommitCoordinator.leerLong(checkpoint, CommitCoordinator.OFFSET, -1) > Files.size(csvPath)) {
+                throw new IOException("El archivo es más corto que el checkpoint: " + csvPath);
+            }
+            // Un checkpoint de mmap con rangos a medias solo se puede continuar en mmap
+            if (checkpoint.containsKey(CommitCoordinator.PENDIENTE) && !"mmap".equals(config.inputMode)) {
+                logger.info("El checkpoint tiene rangos pendientes: se reanuda con --input-mode mmap");
+                procesarCSVMapeado(entrada, charset, numHilos, abortar, logger);
+                return;
+            }
+        }
+
+        if ("mmap".equals(config.inputMode)) {
+            if (compresion != null) {
+                logger.warn("--input-mode mmap no admite entradas comprimidas (" + compresion + "), se usa stream");
+            } else if (CsvChunkSplitter.soportaCharset(charset)) {
+                procesarCSVMapeado(entrada, charset, numHilos, abortar, logger);
+                return;
+            } else {
+                logger.warn("--input-mode mmap no admite " + charset + ", se usa stream");
+            }
+        }
+
+        try (SeekableByteChannel canal = compresion == null ? Files.newByteChannel(csvPath) : null;
+                InputStream flujo = compresion == null ? Channels.newInputStream(canal)
+                        : abrirDescomprimido(csvPath, compresion, logger)) {
+            CsvRowReader reader = new CsvRowReader(flujo, charset, 0);
+            // Leer cabecera
+            String headerLine = reader.leerFila();
+            if (headerLine == null) {
+                logger.warn("Archivo vacío: " + csvPath);
+                return;
+            }
+
+            parseHeader(entrada, headerLine, logger);
+
+            // Al reanudar se salta lo ya indexado: por byte si se conoce, si no por filas
+            long filasPrevias = 0;
+            if (reanudando) {
+                filasPrevias = CommitCoordinator.leerLong(checkpoint, CommitCoordinator.FILAS, 0);
+                long offset = CommitCoordinator.leerLong(checkpoint, CommitCoordinator.OFFSET, -1);
+                if (offset >= 0 && reader.conoceBytes() && canal != null) {
+                    canal.position(offset);
+                    reader = new CsvRowReader(Channels.newInputStream(canal), charset, offset);
+                } else {
+                    for (long i = 0; i < filasPrevias && reader.leerFila() != null; i++) {
+                        // saltar fila ya indexada
+                    }
+                }
+            }
+
+            BlockingQueue<LoteFilas> cola = new ArrayBlockingQueue<>(numHilos * LOTES_POR_HILO);
+            // Byte final del último lote terminado (con los workers en pausa, todo lo
+            // anterior está indexado)
+            AtomicLong finCompletado = new AtomicLong(reader.posicion());
+            if (entrada.unica()) {
+                commits.iniciar(csvPath.toAbsolutePath().toString(), finCompletado::get, () -> null, abortar::get);
+            }
+
+            ExecutorService pool = Executors.newFixedThreadPool(numHilos, nuevaFactoriaHilos("indexador-worker"));
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < numHilos; i++) {
+                workers.add(pool.submit(() -> {
+                    consumirLotes(entrada, cola, abortar, finCompletado, logger);
+                    return null;
+                }));
+            }
+
+            // Procesar filas: el lector solo delimita filas y las agrupa en lotes
+            long count = filasPrevias;
+            boolean lecturaCompleta = false;
+            IngestMetrics.Registro registro = metricas.registro();
+            try {
+                List<String> filas = new ArrayList<>(TAMANO_LOTE);
+                long inicioLote = reader.posicion();
+                while (!abortar.get()) {
+                    long inicioFila = System.nanoTime();
+                    String row = reader.leerFila();
+                    if (row == null) {
+                        break;
+                    }
+                    registro.anotar(IngestMetrics.Etapa.LECTURA, inicioFila);
+                    filas.add(row);
+                    if (filas.size() == TAMANO_LOTE) {
+                        encolar(cola, new LoteFilas(count + 1, filas, inicioLote, reader.posicion()), abortar,
+                                workers);
+                        count += filas.size();
+                        filas = new ArrayList<>(TAMANO_LOTE);
+                        inicioLote = reader.posicion();
+                        registro.actualizarHilo();
+
+                        // Commit periódico según la política
+                        comprobarCommit(logger);
+                    }
+                }
+                if (!filas.isEmpty() && !abortar.get()) {
+                    encolar(cola, new LoteFilas(count + 1, filas, inicioLote, reader.posicion()), abortar,
+                            workers);
+                    count += filas.size();
+                }
+                lecturaCompleta = true;
+            } finally {
+                // Un marcador de fin por worker. Si la lectura falló o se aborta, los
+                // lotes pendientes se descartan para que los workers terminen cuanto antes
+                enviarFin(cola, numHilos, !lecturaCompleta || abortar.get(), workers);
+                pool.shutdown();
+            }
+
+            esperarWorkers(workers);
+
+            if (abortar.get()) {
+                throw new RuntimeException("Demasiados errores. Abortando.");
+            }
+
+            // Commit final del archivo (con varios, al terminar todos)
+            if (entrada.unica()) {
+                confirmarIngesta(logger);
+            }
+
+            logger.info("Archivo procesado (" + csvPath.getFileName() + "): " + (count - filasPrevias) + " filas ("
+                    + numHilos + " hilos"
+                    + (reanudando ? ", reanudado tras " + filasPrevias + " filas" : "") + ")");
+        }
+    }
+
+    /**
+     * Formato de compresión de la entrada según sus primeros bytes
+     * 
+     * @return "gzip", "zstd" o null si no está comprimida
+     */
+    private static String compresion(Path csvPath) throws IOException {
+        byte[] magia = new byte[4];
+        int n;
+        try (InputStream in = Files.newInputStream(csvPath)) {
+            n = in.readNBytes(magia, 0, magia.length);
+        }
+        if (n >= 2 && (magia[0] & 0xff) == 0x1f && (magia[1] & 0xff) == 0x8b) {
+            return "gzip";
+        }
+        if (n == 4 && (magia[0] & 0xff) == 0x28 && (magia[1] & 0xff) == 0xb5 && (magia[2] & 0xff) == 0x2f
+                && (magia[3] & 0xff) == 0xfd) {
+            return "zstd";
+        }
+        return null;
+    }
+
+    /**
+     * Abre una entrada comprimida y la descomprime en un hilo de lectura
+     * anticipada (ReadAheadInputStream), sin pasar por un fichero temporal.
+     * Para zstd se usa el decodificador Java de aircompressor si está en el
+     * classpath.
+     */
+    private static InputStream abrirDescomprimido(Path csvPath, String compresion, Logger logger)
+            throws IOException {
+        InputStream fichero = Files.newInputStream(csvPath);
+        InputStream descomprimido;
+        try {
+            if ("gzip".equals(compresion)) {
+                descomprimido = new GZIPInputStream(fichero, 64 * 1024);
+            } else {
+                descomprimido = abrirZstd(fichero);
+            }
+        } catch (IOException | RuntimeException e) {
+            fichero.close();
+            throw e;
+        }
+        logger.info("Entrada " + compresion + ": descompresión en un hilo de lectura anticipada ("
+                + BLOQUES_DESCOMPRESION + " bloques de " + (TAMANO_BLOQUE_DESCOMPRESION / (1024 * 1024)) + " MB)");
+        return new ReadAheadInputStream(descomprimido, TAMANO_BLOQUE_DESCOMPRESION, BLOQUES_DESCOMPRESION,
+                "indexador-descompresion");
+    }
+
+    private static InputStream abrirZstd(InputStream fichero) throws IOException {
+        try {
+            Class<?> clase = Class.forName("io.airlift.compress.zstd.ZstdInputStream");
+            return (InputStream) clase.getConstructor(InputStream.class).newInstance(fichero);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Entrada zstd sin decodificador en el classpath (io.airlift:aircompressor);"
+                    + " descomprímala antes o use .gz");
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("No se pudo abrir el decodificador zstd: " + e, e);
+        }
+    }
+
+    /**
+     * Bucle de cada worker: toma lotes de la cola hasta recibir el marcador de fin.
+     * Cada lote se toma, se procesa y se escriben sus documentos nuevos sin salir
+     * de commits.entrar()/salir(); la espera en la cola tiene un tiempo máximo
+     * para no bloquear los commits.
+     */
+    private void consumirLotes(Entrada entrada, BlockingQueue<LoteFilas> cola, AtomicBoolean abortar,
+            AtomicLong finCompletado, Logger logger) throws InterruptedException, IOException {
+        while (true) {
+            commits.entrar();
+            try {
+                LoteFilas lote = cola.poll(50, TimeUnit.MILLISECONDS);
+                if (lote == null) {
+                    continue;
+                }
+                if (lote == LoteFilas.FIN) {
+                    return;
+                }
+                if (abortar.get()) {
+                    continue;
+                }
+                long numFila = lote.primeraFila;
+                ContextoHilo ctx = contextoHilo.get();
+                ctx.entrada = entrada;
+                for (String row : lote.filas) {
+                    long inicioFila = System.nanoTime();
+                    ctx.fila.parse(row);
+                    ctx.registro.anotar(IngestMetrics.Etapa.DIVISION, inicioFila);
+                    if (!procesarTextoFila(ctx, numFila, -1, abortar, logger)) {
+                        return;
+                    }
+                    numFila++;
+                }
+                escribirNuevos(ctx, logger);
+                commits.registrar(lote.filas.size(), lote.fin - lote.inicio);
+                ctx.registro.contar(lote.filas.size(), lote.fin - lote.inicio);
+                finCompletado.accumulateAndGet(lote.fin, Math::max);
+            } finally {
+                commits.salir();
+            }
+        }
+    }
+
+    /**
+     * Cierre de la ingesta con todas las filas procesadas: con --shards aplica las
+     * repeticiones en sus fragmentos y los fusiona; después, commit final.
+     */
+    private void confirmarIngesta(Logger logger) throws IOException {
+        long inicio = System.nanoTime();
+        if (raizFragmentos != null) {
+            aplicarRepeticiones(logger);
+            fusionarFragmentos(logger);
+        }
+        commits.commitFinal();
+        metricas.registro().anotar(IngestMetrics.Etapa.COMMIT, inicio);
+    }
+
+    /**
+     * Hace commit si la política de commit lo pide (fuera de entrar()/salir())
+     */
+    private void comprobarCommit(Logger logger) throws IOException {
+        long inicio = System.nanoTime();
+        Map<String, String> datos = commits.comprobar();
+        if (datos != null) {
+            metricas.registro().anotar(IngestMetrics.Etapa.COMMIT, inicio);
+            logger.debug("Commit " + datos.get(CommitCoordinator.GENERACION) + " (byte "
+                    + datos.get(CommitCoordinator.OFFSET) + ", " + datos.get(CommitCoordinator.FILAS)
+                    + " filas). Propiedades: " + totalPropiedades.get() + ", Hosts: " + totalHosts.get());
+        }
+    }
+
+    /**
+     * Indexa una fila ya tokenizada. Los errores de fila se cuentan y solo abortan
+     * al superar max-errors.
+     * 
+     * @param numFila número de fila de datos (o -1 si no se conoce)
+     * @param offset  byte de inicio de la fila (o -1 si no se conoce)
+     * @return false si se ha superado max-errors y hay que abortar
+     */
+    private boolean procesarTextoFila(ContextoHilo ctx, long numFila, long offset, AtomicBoolean abortar,
+            Logger logger) {
+        try {
+            ctx.posicion = posicionGlobal(ctx.entrada, numFila >= 0 ? numFila : offset);
+            procesarFila(ctx, logger);
+        } catch (Exception e) {
+            errores.incrementAndGet();
+            String donde = numFila >= 0 ? String.valueOf(numFila) : "en byte " + offset;
+            logger.error("Error procesando fila " + donde + ": " + e.getMessage());
+
+            if (errores.get() > config.maxErrors) {
+                abortar.set(true);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Variante de procesarCSV para --input-mode mmap: el fichero se divide en
+     * rangos de bytes alineados a filas (ver CsvChunkSplitter) y cada worker
+     * delimita, parsea e indexa las filas de sus rangos, sin hilo lector.
+     * Se generan varios rangos por hilo para equilibrar la carga.
+     * 
+     * Cada rango anota el byte de su siguiente fila por indexar; un commit guarda
+     * lo que falta de cada rango (PENDIENTE) y el byte hasta el que todo está
+     * indexado.
+     */
+    private void procesarCSVMapeado(Entrada entrada, Charset charset, int numHilos, AtomicBoolean abortar,
+            Logger logger) throws IOException {
+        Path csvPath = entrada.ruta;
+        try (CsvChunkSplitter splitter = new CsvChunkSplitter(csvPath, charset)) {
+            String headerLine = splitter.leerCabecera();
+            if (headerLine == null) {
+                logger.warn("Archivo vacío: " + csvPath);
+                return;
+            }
+
+            parseHeader(entrada, headerLine, logger);
+
+            ExecutorService pool = Executors.newFixedThreadPool(numHilos, nuevaFactoriaHilos("indexador-mmap"));
+            try {
+                List<CsvChunkSplitter.Rango> rangos;
+                String pendiente = checkpoint != null ? checkpoint.get(CommitCoordinator.PENDIENTE) : null;
+                if (pendiente != null) {
+                    // Se continúan los mismos rangos desde donde se quedaron
+                    rangos = parsearRangos(pendiente);
+                } else {
+                    if (checkpoint != null) {
+                        splitter.saltarA(CommitCoordinator.leerLong(checkpoint, CommitCoordinator.OFFSET, -1));
+                    }
+                    rangos = splitter.dividir(numHilos * LOTES_POR_HILO, pool);
+                }
+                logger.info("CSV mapeado: " + splitter.tamano() + " bytes en " + rangos.size() + " rangos");
+
+                AtomicLong filas = new AtomicLong(0);
+                // Siguiente byte por indexar de cada rango
+                AtomicLongArray posiciones = new AtomicLongArray(rangos.size());
+                for (int i = 0; i < rangos.size(); i++) {
+                    posiciones.set(i, rangos.get(i).inicio());
+                }
+                if (entrada.unica()) {
+                    commits.iniciar(csvPath.toAbsolutePath().toString(),
+                            () -> offsetIndexado(rangos, posiciones, splitter.tamano()),
+                            () -> rangosPendientes(rangos, posiciones), abortar::get);
+                }
+
+                List<Future<?>> tareas = new ArrayList<>();
+                for (int r = 0; r < rangos.size(); r++) {
+                    int numRango = r;
+                    CsvChunkSplitter.Rango rango = rangos.get(r);
+                    tareas.add(pool.submit(() -> {
+                        ContextoHilo ctx = contextoHilo.get();
+                        ctx.entrada = entrada;
+                        int[] enBloque = { 0 };
+                        // Lectura de una fila: desde el final de la anterior hasta que
+                        // el splitter entrega la siguiente
+                        long[] finFila = { System.nanoTime() };
+                        commits.entrar();
+                        try {
+                            splitter.recorrer(rango, (chars, off, len, offset) -> {
+                                long inicioFila = ctx.registro.anotar(IngestMetrics.Etapa.LECTURA, finFila[0]);
+                                // Las filas anteriores de este rango ya están indexadas
+                                long bytesPrevios = offset - posiciones.get(numRango);
+                                commits.registrar(enBloque[0] > 0 ? 1 : 0, bytesPrevios);
+                                ctx.registro.contar(enBloque[0] > 0 ? 1 : 0, bytesPrevios);
+                                posiciones.set(numRango, offset);
+                                // Cada TAMANO_LOTE filas se deja paso a un posible commit
+                                if (++enBloque[0] > TAMANO_LOTE) {
+                                    escribirNuevos(ctx, logger);
+                                    commits.salir();
+                                    try {
+                                        comprobarCommit(logger);
+                                    } finally {
+                                        commits.entrar();
+                                    }
+                                    enBloque[0] = 1;
+                                    inicioFila = System.nanoTime();
+                                }
+                                ctx.fila.parse(chars, off, len);
+                                ctx.registro.anotar(IngestMetrics.Etapa.DIVISION, inicioFila);
+                                if (abortar.get() || !procesarTextoFila(ctx, -1, offset, abortar, logger)) {
+                                    return false;
+                                }
+                                filas.incrementAndGet();
+                                finFila[0] = System.nanoTime();
+                                return true;
+                            });
+                            if (!abortar.get()) {
+                                escribirNuevos(ctx, logger);
+                                long bytesPrevios = rango.fin() - posiciones.get(numRango);
+                                commits.registrar(enBloque[0] > 0 ? 1 : 0, bytesPrevios);
+                                ctx.registro.contar(enBloque[0] > 0 ? 1 : 0, bytesPrevios);
+                                posiciones.set(numRango, rango.fin());
+                            }
+                        } finally {
+                            commits.salir();
+                        }
+                        return null;
+                    }));
+                }
+                esperarWorkers(tareas);
+
+                if (abortar.get()) {
+                    throw new RuntimeException("Demasiados errores. Abortando.");
+                }
+
+                // Commit final del archivo (con varios, al terminar todos)
+                if (entrada.unica()) {
+                    confirmarIngesta(logger);
+                }
+
+                logger.info("Archivo procesado (" + csvPath.getFileName() + "): " + filas.get() + " filas ("
+                        + numHilos + " hilos, mmap)");
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Byte hasta el que todas las filas están indexadas: el menor de los rangos
+     * sin terminar (o el final del fichero)
+     */
+    private static long offsetIndexado(List<CsvChunkSplitter.Rango> rangos, AtomicLongArray posiciones,
+            long tamano) {
+        for (int i = 0; i < rangos.size(); i++) {
+            if (posiciones.get(i) < rangos.get(i).fin()) {
+                return posiciones.get(i);
+            }
+        }
+        return tamano;
+    }
+
+    /**
+     * Partes de los rangos que faltan por indexar, como "inicio-fin,..." (o null si
+     * no falta nada)
+     */
+    private static String rangosPendientes(List<CsvChunkSplitter.Rango> rangos, AtomicLongArray posiciones) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rangos.size(); i++) {
+            long pos = posiciones.get(i);
+            if (pos < rangos.get(i).fin()) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(pos).append('-').append(rangos.get(i).fin());
+            }
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    /**
+     * Inverso de rangosPendientes
+     */
+    private static List<CsvChunkSplitter.Rango> parsearRangos(String pendiente) throws IOException {
+        List<CsvChunkSplitter.Rango> rangos = new ArrayList<>();
+        try {
+            for (String r : pendiente.split(",")) {
+                int guion = r.indexOf('-');
+                rangos.add(new CsvChunkSplitter.Rango(Long.parseLong(r.substring(0, guion)),
+                        Long.parseLong(r.substring(guion + 1))));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Rangos pendientes no válidos en el checkpoint: " + pendiente, e);
+        }
+        return rangos;
+    }
+
+    /**
+     * Encola un lote sin quedarse bloqueado si los workers han terminado o abortado
+     */
+    private static void encolar(BlockingQueue<LoteFilas> cola, LoteFilas lote, AtomicBoolean abortar,
+            List<Future<?>> workers) throws IOException {
+        try {
+            while (!cola.offer(lote, 100, TimeUnit.MILLISECONDS)) {
+                if (abortar.get()) {
+                    return;
+                }
+                for (Future<?> w : workers) {
+                    if (w.isDone()) {
+                        // Un worker ha muerto de forma inesperada: propagar su error
+                        esperarWorkers(List.of(w));
+                        throw new IOException("Un hilo de indexación terminó prematuramente");
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Lectura del CSV interrumpida");
+        }
+    }
+
+    /**
+     * Envía un marcador de fin por worker. Con descartar=true vacía antes los lotes
+     * pendientes para que los workers terminen cuanto antes.
+     */
+    private static void enviarFin(BlockingQueue<LoteFilas> cola, int numHilos, boolean descartar,
+            List<Future<?>> workers) {
+        if (descartar) {
+            cola.clear();
+        }
+        try {
+            for (int i = 0; i < numHilos; i++) {
+                while (!cola.offer(LoteFilas.FIN, 100, TimeUnit.MILLISECONDS)) {
+                    if (descartar) {
+                        cola.clear();
+                    } else if (workers.stream().allMatch(Future::isDone)) {
+                        return;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.forEach(w -> w.cancel(true));
+        }
+    }
+
+    /**
+     * Espera a que terminen los workers y relanza el primer error inesperado
+     */
+    private static void esperarWorkers(List<Future<?>> workers) throws IOException {
+        for (Future<?> w : workers) {
+            try {
+                w.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Indexación interrumpida");
+            } catch (ExecutionException e) {
+                Throwable causa = e.getCause();
+                if (causa instanceof IOException io) {
+                    throw io;
+                }
+                throw new IOException("Error en hilo de indexación: " + causa, causa);
+            }
+        }
+    }
+
+    /**
+     * Factoría de hilos con nombre (facilita leer volcados de hilos y logs)
+     */
+    private static ThreadFactory nuevaFactoriaHilos(String prefijo) {
+        AtomicInteger n = new AtomicInteger(0);
+        return r -> {
+            Thread t = new Thread(r, prefijo + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Parsea la cabecera del CSV y compila el esquema de columnas
+     */
+    private void parseHeader(Entrada entrada, String header, Logger logger) {
+        EsquemaCsv esquema = EsquemaCsv.compilar(new CsvRow(delimiterChar()).parse(header), config.idField);
+        if (!esquema.faltantes.isEmpty()) {
+            logger.warn("Columnas no encontradas en la cabecera"
+                    + (entrada.unica() ? "" : " de " + entrada.ruta) + ": " + esquema.faltantes);
+        }
+        entrada.esquema = esquema;
+    }
+
+    /**
+     * Delimitador como carácter (parseArgs garantiza que tiene uno solo)
+     */
+    private char delimiterChar() {
+        return config.delimiter.charAt(0);
+    }
+
+    /**
+     * Procesa una fila del CSV: crea documentos para propiedades y hosts
+     */
+    private void procesarFila(ContextoHilo ctx, Logger logger) throws IOException {
+        CsvRow cols = ctx.fila;
+        if (cols.size() == 0)
+            return;
+        EsquemaCsv esquema = ctx.entrada.esquema;
+
+        // Extraer ID de propiedad (obligatorio); sin espacios es la clave primaria
+        String idStr = cols.get(esquema.id);
+        if (idStr == null || idStr.isBlank()) {
+            throw new IllegalArgumentException("Campo 'id' obligatorio faltante");
+        }
+        idStr = idStr.trim();
+        ctx.destino = destino(idStr);
+        // host_id se lee una sola vez: lo usan el documento de propiedad y el de host
+        String hostId = cols.get(esquema.hostId);
+
+        // Un id repetido en el CSV solo se escribe una vez desde los workers; el
+        // resto de apariciones se descartan (first) o se aplazan (last). Con last
+        // solo se aplaza una aparición posterior a todas las ya vistas de ese id:
+        // las filas no se procesan en orden (varios hilos, varios ficheros) y la
+        // escrita puede no ser la primera del CSV
+        if (ctx.repeticion) {
+            procesarPropiedad(ctx, cols, idStr, hostId, logger);
+            return;
+        }
+        long posicionAnterior = marcarIdVisto(idStr, ctx.posicion);
+        if (posicionAnterior == ConcurrentLongMaxMap.AUSENTE && indexadaAntesDelCheckpoint(ctx, idStr)) {
+            // Al reanudar, un id ya escrito antes del checkpoint se trata como visto,
+            // igual que en una ejecución sin interrumpir
+            posicionAnterior = ANTES_DEL_CHECKPOINT;
+        }
+        if (posicionAnterior == ConcurrentLongMaxMap.AUSENTE) {
+            procesarPropiedad(ctx, cols, idStr, hostId, logger);
+        } else {
+            propiedadesRepetidas.increment();
+            if (!"first".equals(config.duplicates) && ctx.posicion > posicionAnterior) {
+                FilaAplazada fila = new FilaAplazada(ctx.entrada, ctx.posicion, cols.texto());
+                repeticiones.merge(idStr, fila, (a, b) -> a.posicion() >= b.posicion() ? a : b);
+            }
+        }
+
+        // Extraer host_id (obligatorio para hosts)
+        if (hostId != null && !hostId.isBlank()) {
+            // Verificar si ya procesamos este host en esta sesión. El add atómico decide
+            // qué worker indexa el host cuando dos filas del mismo host llegan a la vez
+            long hostNum = parseIdNumerico(hostId);
+            if (!hostVisto(hostNum, hostId)) {
+                long hashHost = hashContenido(cols, esquema.columnasHost);
+                long hashHostIndexado = PkLookup.AUSENTE;
+                if (ctx.pkHosts != null) {
+                    ctx.clave.copyChars(hostId);
+                    hashHostIndexado = ctx.pkHosts.hashPorTermino(ctx.clave.get());
+                }
+                boolean hostSinCambios = hashHostIndexado == hashHost;
+                if (hostSinCambios && marcarHostVisto(hostNum, hostId)) {
+                    hostsSinCambios.increment();
+                }
+
+                Document docHost = hostSinCambios ? null
+                        : crearDocumentoHost(esquema, cols, hostId, hashHost, ctx.camposHost, ctx.registro);
+                if (docHost != null && marcarHostVisto(hostNum, hostId)) {
+                    if (hashHostIndexado == PkLookup.AUSENTE) {
+                        hostsNuevos.increment();
+                    } else {
+                        hostsActualizados.increment();
+                    }
+                    // Construir facetas
+                    long inicio = System.nanoTime();
+                    Document docBuilt = facetsConfig.build(ctx.destino.taxoHosts, docHost);
+                    ctx.registro.anotar(IngestMetrics.Etapa.FACETAS, inicio);
+
+                    if (config.dryRun) {
+                        if (logger.debugActivo()) {
+                            logger.debug("DRY-RUN: Upsert host ID=" + hostId);
+                        }
+                    } else if (hashHostIndexado == PkLookup.AUSENTE) {
+                        // Host nuevo (cada host se escribe una vez por ejecución): sin borrado
+                        agregarDocumento(ctx, ctx.destino.hosts, ctx.nuevosHosts.get(ctx.destino.numero), docBuilt);
+                        totalHosts.incrementAndGet();
+                    } else {
+                        Term termHostId = new Term("host_id", hostId);
+                        inicio = System.nanoTime();
+                        ctx.destino.hosts.updateDocument(termHostId, docBuilt);
+                        ctx.registro.anotar(IngestMetrics.Etapa.ESCRITURA, inicio);
+                        totalHosts.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Escribe el documento de propiedad de una fila. Con un índice existente, si
+     * el documento indexado tiene el mismo hash de contenido la fila no ha
+     * cambiado y no se reescribe. Si el id no estaba en el índice basta con
+     * addDocument, sin término de borrado que resolver al vaciar el buffer (en
+     * build y rebuild, todas las filas); si no, updateDocument.
+     */
+    private void procesarPropiedad(ContextoHilo ctx, CsvRow cols, String idStr, String hostId, Logger logger)
+            throws IOException {
+        Entrada entrada = ctx.entrada;
+        long hashPropiedad = hashContenido(cols, entrada.esquema.columnasPropiedad);
+        if (!entrada.unica()) {
+            // La ciudad no es una columna del CSV, pero también está en el documento
+            hashPropiedad = PkLookup.normalizar(hashPropiedad * 31 + entrada.ciudad.hashCode());
+        }
+        long hashIndexado = PkLookup.AUSENTE;
+        if (ctx.pkPropiedades != null && !ctx.repeticion) {
+            ctx.clave.copyChars(idStr);
+            hashIndexado = ctx.pkPropiedades.hashPorTermino(ctx.clave.get());
+        }
+
+        if (hashIndexado == hashPropiedad) {
+            propiedadesSinCambios.increment();
+            return;
         }
 
-        Charset charset = Charset.forName(config.encoding);
+        // Crear documento de propiedad
+        Document docProperty = crearDocumentoPropiedad(entrada, cols, idStr, hostId, hashPropiedad,
+                ctx.camposPropiedad, ctx.registro);
+        if (docProperty == null) {
+            return;
+        }
+        if (ctx.repeticion) {
+            // Ya contada como repetida
+        } else if (hashIndexado == PkLookup.AUSENTE) {
+            propiedadesNuevas.increment();
+        } else {
+            propiedadesActualizadas.increment();
+        }
+        // Construir facetas
+        long inicio = System.nanoTime();
+        Document docBuilt = facetsConfig.build(ctx.destino.taxoPropiedades, docProperty);
+        ctx.registro.anotar(IngestMetrics.Etapa.FACETAS, inicio);
 
-        try (BufferedReader br = Files.newBufferedReader(csvPath, charset)) {
-            // Leer cabecera
-            String headerLine = readCompleteCsvRow(br);
-            if (headerLine == null) {
-                logger.warn("Archivo vacío: " + csvPath);
-                return;
+        if (config.dryRun) {
+            if (logger.debugActivo()) {
+                logger.debug("DRY-RUN: Upsert propiedad ID=" + idStr);
             }
+        } else if (hashIndexado == PkLookup.AUSENTE && !ctx.repeticion) {
+            agregarDocumento(ctx, ctx.destino.propiedades, ctx.nuevasPropiedades.get(ctx.destino.numero), docBuilt);
+            totalPropiedades.incrementAndGet();
+        } else {
+            // Upsert por ID (una repetición sustituye a la aparición ya escrita)
+            inicio = System.nanoTime();
+            ctx.destino.propiedades.updateDocument(new Term("id", idStr), docBuilt);
+            ctx.registro.anotar(IngestMetrics.Etapa.ESCRITURA, inicio);
+            totalPropiedades.incrementAndGet();
+        }
+    }
 
-            parseHeader(headerLine);
+    /**
+     * Añade un documento nuevo. Sin --reuse-fields se acumula en pendientes y se
+     * escribe con addDocuments al terminar el lote (ver escribirNuevos); con
+     * reutilización los Field del documento cambian en la siguiente fila, así que
+     * se escribe ya. Un índice ordenado (--index-sort) tampoco admite bloques de
+     * addDocuments: sus documentos se escriben de uno en uno.
+     */
+    private void agregarDocumento(ContextoHilo ctx, IndexWriter writer, List<Document> pendientes, Document doc)
+            throws IOException {
+        if (config.reuseFields || writer.getConfig().getIndexSort() != null) {
+            long inicio = System.nanoTime();
+            writer.addDocument(doc);
+            ctx.registro.anotar(IngestMetrics.Etapa.ESCRITURA, inicio);
+        } else {
+            pendientes.add(doc);
+        }
+    }
 
-            // Procesar filas
-            String row;
-            int count = 0;
-            int commitCounter = 0;
+    /**
+     * Escribe los documentos nuevos acumulados por un worker. Debe llamarse antes
+     * de commits.salir(): un commit no puede dar por indexadas filas cuyos
+     * documentos siguen en memoria.
+     */
+    private void escribirNuevos(ContextoHilo ctx, Logger logger) throws IOException {
+        for (Destino d : destinos) {
+            escribirNuevos(d.propiedades, ctx.nuevasPropiedades.get(d.numero), totalPropiedades, ctx.registro,
+                    logger);
+            escribirNuevos(d.hosts, ctx.nuevosHosts.get(d.numero), totalHosts, ctx.registro, logger);
+        }
+    }
 
-            while ((row = readCompleteCsvRow(br)) != null) {
+    private void escribirNuevos(IndexWriter writer, List<Document> docs, AtomicInteger total,
+            IngestMetrics.Registro registro, Logger logger) throws IOException {
+        if (docs.isEmpty()) {
+            return;
+        }
+        long inicio = System.nanoTime();
+        try {
+            writer.addDocuments(docs);
+        } catch (IllegalArgumentException e) {
+            // addDocuments es atómico: si un documento no es válido no se añade
+            // ninguno, así que se reintenta uno a uno para perder solo los malos
+            for (Document doc : docs) {
                 try {
-                    List<String> cols = parseCsvLine(row, config.delimiter);
-                    procesarFila(cols, logger);
-                    count++;
-                    commitCounter++;
-
-                    // Commit periódico
-                    if (commitCounter >= COMMIT_INTERVAL) {
-                        writerProperties.commit();
-                        writerHosts.commit();
-                        commitCounter = 0;
-                        logger.debug("Commit realizado. Propiedades: " + totalPropiedades.get() + ", Hosts: "
-                                + totalHosts.get());
-                    }
-
-                } catch (Exception e) {
+                    writer.addDocument(doc);
+                } catch (IllegalArgumentException e2) {
                     errores.incrementAndGet();
-                    logger.error("Error procesando fila " + count + ": " + e.getMessage());
-
-                    if (errores.get() > config.maxErrors) {
-                        throw new RuntimeException("Demasiados errores. Abortando.");
-                    }
+                    total.decrementAndGet();
+                    logger.error("Error indexando documento: " + e2.getMessage());
                 }
             }
-
-            // Commit final del archivo
-            writerProperties.commit();
-            writerHosts.commit();
-
-            logger.info("Archivo procesado: " + count + " filas");
+        } finally {
+            docs.clear();
+            registro.anotar(IngestMetrics.Etapa.ESCRITURA, inicio);
         }
     }
 
     /**
-     * Lee una fila CSV completa que puede abarcar múltiples líneas.
-     * Acumula líneas hasta que todas las comillas estén cerradas.
+     * Aplica las repeticiones aplazadas (--duplicates last): la última aparición
+     * de cada id, con un solo updateDocument por id. Se ejecuta justo antes de
+     * cada commit, con los workers en pausa y la primera aparición procesada de
+     * cada id ya escrita (cada fila aplazada es posterior a ella).
      */
-    private String readCompleteCsvRow(BufferedReader br) throws IOException {
-        String line = br.readLine();
-        if (line == null)
-            return null;
-
-        // Si no hay comillas, es una fila simple de una línea
-        int quoteCount = countUnescapedQuotes(line);
-        if (quoteCount % 2 == 0) {
-            return line;
+    private void aplicarRepeticiones(Logger logger) throws IOException {
+        if (repeticiones.isEmpty()) {
+            return;
         }
-
-        // Hay comillas sin cerrar, acumular líneas hasta cerrar todas las comillas
-        StringBuilder row = new StringBuilder(line);
-        while (quoteCount % 2 != 0) {
-            line = br.readLine();
-            if (line == null) {
-                // Fin de archivo sin cerrar comillas - devolver lo que tenemos
-                break;
+        List<FilaAplazada> filas = new ArrayList<>(repeticiones.values());
+        repeticiones.clear();
+        filas.sort(Comparator.comparingLong(FilaAplazada::posicion));
+        if (contextoRepeticiones == null) {
+            contextoRepeticiones = new ContextoHilo();
+            contextoRepeticiones.repeticion = true;
+        }
+        for (FilaAplazada f : filas) {
+            try {
+                contextoRepeticiones.entrada = f.entrada();
+                contextoRepeticiones.fila.parse(f.texto());
+                procesarFila(contextoRepeticiones, logger);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                errores.incrementAndGet();
+                logger.error("Error procesando fila repetida (" + f.entrada().ruta.getFileName() + ", posición "
+                        + (f.posicion() & MASCARA_POSICION) + "): " + e.getMessage());
             }
-            row.append('\n').append(line);
-            quoteCount += countUnescapedQuotes(line);
         }
-
-        return row.toString();
+        logger.debug("Aplicadas " + filas.size() + " filas con id repetido");
     }
 
     /**
-     * Cuenta comillas no escapadas en una línea (ignora comillas escapadas "")
+     * Hash de 64 bits de las columnas de las que depende un documento
      */
-    private int countUnescapedQuotes(String line) {
-        if (line == null)
-            return 0;
-        int count = 0;
-        for (int i = 0; i < line.length(); i++) {
-            if (line.charAt(i) == '"') {
-                // Verificar si es una comilla escapada (dos comillas consecutivas)
-                if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
-                    i++; // Saltar la siguiente comilla también
-                } else {
-                    count++;
-                }
-            }
+    private static long hashContenido(CsvRow cols, int[] columnas) {
+        long h = 0xcbf29ce484222325L ^ VERSION_DOCUMENTOS;
+        for (int col : columnas) {
+            h = cols.hash(col, h);
         }
-        return count;
+        // Mezcla final (fmix64 de MurmurHash3) para repartir los bits
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return PkLookup.normalizar(h);
     }
 
     /**
-     * Parsea la cabecera del CSV
+     * Convierte un id (host_id o id de propiedad) a long si es un entero canónico
+     * (solo dígitos, sin ceros a la izquierda), de modo que long y texto se
+     * correspondan uno a uno. Acepta hasta 19 dígitos, es decir, cualquier valor
+     * entre 0 y Long.MAX_VALUE (los ids actuales de Inside Airbnb tienen 19)
+     * 
+     * @return el id, o -1 si no es un entero canónico o no cabe en un long y hay
+     *         que usar el conjunto de texto
      */
-    private void parseHeader(String header) {
-        List<String> cols = parseCsvLine(header, config.delimiter);
-        headerIndex.clear();
-        for (int i = 0; i < cols.size(); i++) {
-            headerIndex.put(cols.get(i), i);
+    private static long parseIdNumerico(String id) {
+        int len = id.length();
+        if (len == 0 || len > 19 || (id.charAt(0) == '0' && len > 1)) {
+            return -1;
         }
+        long v = 0;
+        for (int i = 0; i < len; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            int digito = c - '0';
+            if (v > (Long.MAX_VALUE - digito) / 10) {
+                return -1;
+            }
+            v = v * 10 + digito;
+        }
+        return v;
     }
 
     /**
-     * Procesa una fila del CSV: crea documentos para propiedades y hosts
+     * Posición de una fila en el conjunto de la ingesta: el orden del fichero en
+     * los 16 bits altos y, en los 48 bajos, el número de fila (stream) o el byte
+     * de inicio (mmap). Crece con el orden de los ficheros y de sus filas.
      */
-    private void procesarFila(List<String> cols, Logger logger) throws IOException {
-        if (cols == null || cols.isEmpty())
-            return;
+    private static long posicionGlobal(Entrada entrada, long posicion) {
+        return ((long) entrada.orden << BITS_POSICION) | (posicion & MASCARA_POSICION);
+    }
 
-        // Extraer ID de propiedad (obligatorio)
-        String idStr = get(cols, config.idField);
-        if (idStr == null || idStr.isBlank()) {
-            throw new IllegalArgumentException("Campo 'id' obligatorio faltante");
+    /**
+     * Registra una aparición del id de propiedad
+     * 
+     * @return la mayor posición en la que ya se había visto, o
+     *         ConcurrentLongMaxMap.AUSENTE si este hilo es el primero en verlo
+     */
+    private long marcarIdVisto(String idStr, long posicion) {
+        long idNum = parseIdNumerico(idStr);
+        if (idNum >= 0) {
+            return idsVistos.maximo(idNum, posicion);
+        }
+        Long anterior = idsVistosTexto.putIfAbsent(idStr, posicion);
+        while (anterior != null && posicion > anterior && !idsVistosTexto.replace(idStr, anterior, posicion)) {
+            anterior = idsVistosTexto.get(idStr);
         }
+        return anterior != null ? anterior : ConcurrentLongMaxMap.AUSENTE;
+    }
 
-        // Crear documento de propiedad
-        Document docProperty = crearDocumentoPropiedad(cols);
-        if (docProperty != null) {
-            // Upsert por ID
-            Term termId = new Term("id", idStr);
-            // Construir facetas
-            Document docBuilt = facetsConfig.build(taxoWriterProperties, docProperty);
-
-            if (config.dryRun) {
-                logger.debug("DRY-RUN: Upsert propiedad ID=" + idStr);
-            } else {
-                writerProperties.updateDocument(termId, docBuilt);
-                totalPropiedades.incrementAndGet();
-            }
+    /**
+     * Al reanudar (--resume), indica si el id ya está en la foto del checkpoint:
+     * lo escribió una fila anterior al byte guardado
+     */
+    private boolean indexadaAntesDelCheckpoint(ContextoHilo ctx, String idStr) throws IOException {
+        if (checkpoint == null || ctx.pkPropiedades == null) {
+            return false;
         }
+        ctx.clave.copyChars(idStr);
+        return ctx.pkPropiedades.hashPorTermino(ctx.clave.get()) != PkLookup.AUSENTE;
+    }
 
-        // Extraer host_id (obligatorio para hosts)
-        String hostId = get(cols, "host_id");
-        if (hostId != null && !hostId.isBlank()) {
-            // Verificar si ya procesamos este host en esta sesión
-            if (!hostsCache.containsKey(hostId)) {
-                Document docHost = crearDocumentoHost(cols);
-                if (docHost != null) {
-                    hostsCache.put(hostId, docHost);
-                    // Construir facetas
-                    Document docBuilt = facetsConfig.build(taxoWriterHosts, docHost);
+    private boolean hostVisto(long hostNum, String hostId) {
+        return hostNum >= 0 ? hostsVistos.contains(hostNum) : hostsVistosTexto.contains(hostId);
+    }
 
-                    if (config.dryRun) {
-                        logger.debug("DRY-RUN: Upsert host ID=" + hostId);
-                    } else {
-                        Term termHostId = new Term("host_id", hostId);
-                        writerHosts.updateDocument(termHostId, docBuilt);
-                        totalHosts.incrementAndGet();
-                    }
-                }
-            }
-        }
+    /**
+     * @return true si este hilo es el primero en marcar el host
+     */
+    private boolean marcarHostVisto(long hostNum, String hostId) {
+        return hostNum >= 0 ? hostsVistos.add(hostNum) : hostsVistosTexto.add(hostId);
     }
 
     /**
      * Crea un documento Lucene para una propiedad
+     * 
+     * Cada columna se lee (y se limpia o parsea) una única vez, antes de crear
+     * ningún campo (etapas field_parse y document_build de las métricas): los
+     * mismos valores alimentan su campo propio y el mega campo contents.
      */
-    private Document crearDocumentoPropiedad(List<String> cols) {
-        Document doc = new Document();
+    private Document crearDocumentoPropiedad(Entrada entrada, CsvRow cols, String idStr, String hostId,
+            long hashContenido, ReusableFields campos, IngestMetrics.Registro registro) {
+        EsquemaCsv esquema = entrada.esquema;
+        long inicio = System.nanoTime();
+
+        long idEntero = FieldParsers.entero(idStr);
+        if (idEntero == FieldParsers.SIN_VALOR) {
+            return null; // ID obligatorio
+        }
+        int id = (int) idEntero;
+        long idNum = parseIdNumerico(idStr);
+        String listingUrl = cols.get(esquema.listingUrl);
+        String name = cols.get(esquema.name);
+        String description = htmlToText(cols.get(esquema.description));
+        String neighborhoodOverview = htmlToText(cols.get(esquema.neighborhoodOverview));
+        String neighbourhood = cols.get(esquema.neighbourhoodCleansed);
+        // Los números se parsean en el buffer de la fila (NaN / SIN_VALOR si faltan)
+        double lat = cols.getDecimal(esquema.latitude);
+        double lon = cols.getDecimal(esquema.longitude);
+        String propertyType = cols.get(esquema.propertyType);
+        // Se parsean una vez para amenity y contents
+        List<String> amenList = parseAmenities(cols.get(esquema.amenities));
+        double price = cols.getPrecio(esquema.price);
+        long numReviews = cols.getEntero(esquema.numberOfReviews);
+        double rating = cols.getDecimal(esquema.reviewScoresRating);
+        double bathrooms = cols.getDecimal(esquema.bathrooms);
+        String bathroomsText = cols.get(esquema.bathroomsText);
+        long bedrooms = cols.getEntero(esquema.bedrooms);
+        inicio = registro.anotar(IngestMetrics.Etapa.PARSEO, inicio);
+
+        Document doc = campos.documento();
 
         // ID (IntPoint, no stored como punto, pero sí como StoredField para
         // recuperación)
-        String idStr = get(cols, config.idField);
-        Integer id = parseInteger(idStr);
-        if (id == null) {
-            return null; // ID obligatorio
+        doc.add(campos.intPoint(P_ID, "id", id));
+        // Clave primaria: término exacto (upserts y búsqueda por id) y, si es un
+        // entero que cabe en un long (hasta 19 dígitos), también doc value numérico
+        // (sin el límite de int del IntPoint). El doc value va en su propio campo:
+        // Lucene exige que "id" tenga la misma estructura en todos los documentos
+        doc.add(campos.stringField(P_ID_KEY, "id", idStr, Field.Store.NO));
+        if (idNum >= 0) {
+            doc.add(campos.numericDocValues(P_ID_NUM, "id_num", idNum));
         }
-        doc.add(new IntPoint("id", id));
 
         // listing_url (StringField, stored - URL)
-        String listingUrl = get(cols, "listing_url");
         if (listingUrl != null && !listingUrl.isBlank()) {
-            doc.add(new StringField("listing_url", listingUrl.trim(), Field.Store.YES));
+            doc.add(campos.stringField(P_LISTING_URL, "listing_url", listingUrl.trim(), Field.Store.YES));
         }
 
         // name (TextField, stored)
-        addTextField(doc, "name", get(cols, "name"), true);
+        addTextField(doc, campos, P_NAME, "name", name, true);
 
         // description (TextField con EnglishAnalyzer, stored)
-        addTextField(doc, "description", htmlToText(get(cols, "description")), true);
+        addTextField(doc, campos, P_DESCRIPTION, "description", description, true);
 
         // neighborhood_overview (TextField con EnglishAnalyzer, stored)
-        addTextField(doc, "neighborhood_overview", htmlToText(get(cols, "neighborhood_overview")), true);
+        addTextField(doc, campos, P_NEIGHBORHOOD_OVERVIEW, "neighborhood_overview", neighborhoodOverview, true);
 
         // neighbourhood_cleansed (FacetField para facetado + StringField para búsqueda)
         // Normalizar a lowercase para evitar problemas de case-sensitivity con
         // KeywordAnalyzer
-        String neighbourhood = get(cols, "neighbourhood_cleansed");
         if (neighbourhood != null && !neighbourhood.isBlank()) {
             String neighbourhoodNormalized = neighbourhood.trim().toLowerCase();
             // Guardar valor original para stored field
-            doc.add(new StoredField("neighbourhood_cleansed_original", neighbourhood.trim()));
+            doc.add(campos.storedString(P_NEIGHBOURHOOD_ORIGINAL, "neighbourhood_cleansed_original", neighbourhood.trim()));
             doc.add(new FacetField("neighbourhood_cleansed", neighbourhoodNormalized));
-            doc.add(new StringField("neighbourhood_cleansed", neighbourhoodNormalized, Field.Store.YES));
-            doc.add(new SortedDocValuesField("neighbourhood_cleansed",
-                    new org.apache.lucene.util.BytesRef(neighbourhoodNormalized)));
+            doc.add(campos.stringField(P_NEIGHBOURHOOD, "neighbourhood_cleansed", neighbourhoodNormalized,
+                    Field.Store.YES));
+            doc.add(campos.sortedDocValues(P_NEIGHBOURHOOD_DV, "neighbourhood_cleansed", neighbourhoodNormalized));
         }
 
         // latitude / longitude (LatLonPoint + Stored + DocValues)
-        Double lat = parseDouble(get(cols, "latitude"));
-        Double lon = parseDouble(get(cols, "longitude"));
-        if (lat != null && lon != null) {
-            doc.add(new LatLonPoint("location", lat, lon));
-            doc.add(new StoredField("latitude", lat));
-            doc.add(new StoredField("longitude", lon));
-            doc.add(new LatLonDocValuesField("location", lat, lon));
+        if (!Double.isNaN(lat) && !Double.isNaN(lon)) {
+            doc.add(campos.latLonPoint(P_LOCATION, "location", lat, lon));
+            doc.add(campos.storedDouble(P_LATITUDE, "latitude", lat));
+            doc.add(campos.storedDouble(P_LONGITUDE, "longitude", lon));
+            doc.add(campos.latLonDocValues(P_LOCATION_DV, "location", lat, lon));
         }
 
         // property_type (FacetField para facetado + StringField para búsqueda)
         // Normalizar a lowercase para evitar problemas de case-sensitivity con
         // KeywordAnalyzer
-        String propertyType = get(cols, "property_type");
         if (propertyType != null && !propertyType.isBlank()) {
             String propertyTypeNormalized = propertyType.trim().toLowerCase();
             // Guardar valor original para stored field
-            doc.add(new StoredField("property_type_original", propertyType.trim()));
+            doc.add(campos.storedString(P_PROPERTY_TYPE_ORIGINAL, "property_type_original", propertyType.trim()));
             doc.add(new FacetField("property_type", propertyTypeNormalized));
-            doc.add(new StringField("property_type", propertyTypeNormalized, Field.Store.YES));
-            doc.add(new SortedDocValuesField("property_type",
-                    new org.apache.lucene.util.BytesRef(propertyTypeNormalized)));
+            doc.add(campos.stringField(P_PROPERTY_TYPE, "property_type", propertyTypeNormalized, Field.Store.YES));
+            doc.add(campos.sortedDocValues(P_PROPERTY_TYPE_DV, "property_type", propertyTypeNormalized));
         }
 
-        // amenities (TextField multivaluado)
-        String amenitiesRaw = get(cols, "amenities");
-        if (amenitiesRaw != null && !amenitiesRaw.isBlank()) {
-            // Parsear y indexar cada amenidad individual como campo multivaluado
-            List<String> amenList = parseAmenities(amenitiesRaw);
-            for (String amenity : amenList) {
-                doc.add(new TextField("amenity", amenity, Field.Store.YES));
-            }
+        // amenities (TextField multivaluado, analizado a través de la caché de tokens)
+        for (int i = 0; i < amenList.size(); i++) {
+            doc.add(campos.textFieldMulti(P_AMENITY, i, "amenity", amenList.get(i), Field.Store.YES, cacheTokens));
         }
 
         // price (DoublePoint, stored + docvalues)
-        Double price = parsePrice(get(cols, "price"));
-        if (price != null) {
-            doc.add(new DoublePoint("price", price));
-            doc.add(new StoredField("price", price));
-            doc.add(new DoubleDocValuesField("price", price));
+        if (!Double.isNaN(price)) {
+            doc.add(campos.doublePoint(P_PRICE, "price", price));
+            doc.add(campos.storedDouble(P_PRICE_STORED, "price", price));
+            doc.add(campos.doubleDocValues(P_PRICE_DV, "price", price));
         }
 
         // number_of_reviews (IntPoint, stored + docvalues)
-        Integer numReviews = parseInteger(get(cols, "number_of_reviews"));
-        if (numReviews != null) {
-            doc.add(new IntPoint("number_of_reviews", numReviews));
-            doc.add(new StoredField("number_of_reviews", numReviews));
-            doc.add(new NumericDocValuesField("number_of_reviews", numReviews));
+        if (numReviews != FieldParsers.SIN_VALOR) {
+            doc.add(campos.intPoint(P_REVIEWS, "number_of_reviews", (int) numReviews));
+            doc.add(campos.storedInt(P_REVIEWS_STORED, "number_of_reviews", (int) numReviews));
+            doc.add(campos.numericDocValues(P_REVIEWS_DV, "number_of_reviews", numReviews));
         }
 
         // review_scores_rating (DoublePoint, stored + docvalues)
-        Double rating = parseDouble(get(cols, "review_scores_rating"));
-        if (rating != null) {
-            doc.add(new DoublePoint("review_scores_rating", rating));
-            doc.add(new StoredField("review_scores_rating", rating));
-            doc.add(new DoubleDocValuesField("review_scores_rating", rating));
+        if (!Double.isNaN(rating)) {
+            doc.add(campos.doublePoint(P_RATING, "review_scores_rating", rating));
+            doc.add(campos.storedDouble(P_RATING_STORED, "review_scores_rating", rating));
+            doc.add(campos.doubleDocValues(P_RATING_DV, "review_scores_rating", rating));
         }
 
         // bathrooms (IntPoint, stored + docvalues)
-        Double bathrooms = parseDouble(get(cols, "bathrooms"));
-        if (bathrooms != null) {
-            int bathroomsInt = bathrooms.intValue();
-            doc.add(new IntPoint("bathrooms", bathroomsInt));
-            doc.add(new StoredField("bathrooms", bathroomsInt));
-            doc.add(new NumericDocValuesField("bathrooms", bathroomsInt));
+        if (!Double.isNaN(bathrooms)) {
+            int bathroomsInt = (int) bathrooms;
+            doc.add(campos.intPoint(P_BATHROOMS, "bathrooms", bathroomsInt));
+            doc.add(campos.storedInt(P_BATHROOMS_STORED, "bathrooms", bathroomsInt));
+            doc.add(campos.numericDocValues(P_BATHROOMS_DV, "bathrooms", bathroomsInt));
         }
 
         // bathrooms_text (TextField, stored)
-        addTextField(doc, "bathrooms_text", get(cols, "bathrooms_text"), true);
+        addTextField(doc, campos, P_BATHROOMS_TEXT, "bathrooms_text", bathroomsText, true, cacheTokens);
 
         // bedrooms (IntPoint, stored + docvalues)
-        Integer bedrooms = parseInteger(get(cols, "bedrooms"));
-        if (bedrooms != null) {
-            doc.add(new IntPoint("bedrooms", bedrooms));
-            doc.add(new StoredField("bedrooms", bedrooms));
-            doc.add(new NumericDocValuesField("bedrooms", bedrooms));
+        if (bedrooms != FieldParsers.SIN_VALOR) {
+            doc.add(campos.intPoint(P_BEDROOMS, "bedrooms", (int) bedrooms));
+            doc.add(campos.storedInt(P_BEDROOMS_STORED, "bedrooms", (int) bedrooms));
+            doc.add(campos.numericDocValues(P_BEDROOMS_DV, "bedrooms", bedrooms));
         }
 
         // host_id (join lógico - StringField, stored + docvalues)
-        String hostId = get(cols, "host_id");
         if (hostId != null && !hostId.isBlank()) {
-            doc.add(new StringField("host_id", hostId, Field.Store.YES));
-            doc.add(new SortedDocValuesField("host_id", new org.apache.lucene.util.BytesRef(hostId)));
+            doc.add(campos.stringField(P_HOST_ID, "host_id", hostId, Field.Store.YES));
+            doc.add(campos.sortedDocValues(P_HOST_ID_DV, "host_id", hostId));
+        }
+
+        // city (FacetField + StringField, stored + docvalues): solo con varias
+        // entradas, la ciudad del fichero
+        if (!entrada.unica()) {
+            doc.add(new FacetField("city", entrada.ciudad));
+            doc.add(campos.stringField(P_CITY, "city", entrada.ciudad, Field.Store.YES));
+            doc.add(campos.sortedDocValues(P_CITY_DV, "city", entrada.ciudad));
         }
 
         // =================================================================================
         // MEGA FIELD (contents) - "General search query"
         // =================================================================================
-        StringBuilder contents = new StringBuilder();
+        // Cada texto se analiza por separado cuando IndexWriter llega al campo, sin
+        // copiarlos a un String (ver ConcatenatedTokenStream); el resultado es el
+        // de analizarlos unidos con espacios. Los valores categóricos van por la
+        // caché de tokens
+        ConcatenatedTokenStream contents = new ConcatenatedTokenStream(analizador, FIELD_CONTENTS, cacheTokens);
 
         // 1. Name
-        String name = get(cols, "name");
-        if (name != null)
-            contents.append(name).append(" ");
+        contents.add(name);
 
         // 2. Description
-        String description = get(cols, "description");
-        if (description != null)
-            contents.append(htmlToText(description)).append(" ");
+        contents.add(description);
 
         // 3. Neighborhood Overview
-        String neighborhoodOverview = get(cols, "neighborhood_overview");
-        if (neighborhoodOverview != null)
-            contents.append(htmlToText(neighborhoodOverview)).append(" ");
+        contents.add(neighborhoodOverview);
 
         // 4. Neighbourhood Cleansed
-        if (neighbourhood != null)
-            contents.append(neighbourhood).append(" ");
+        contents.addCached(neighbourhood);
 
         // 5. Property Type
-        if (propertyType != null)
-            contents.append(propertyType).append(" ");
+        contents.addCached(propertyType);
 
-        // 6. Amenities
-        if (amenitiesRaw != null) {
-            // Ya tenemos la lista parseada si se usó arriba, pero para asegurar:
-            List<String> amenList = parseAmenities(amenitiesRaw);
-            for (String am : amenList) {
-                contents.append(am).append(" ");
-            }
+        // 6. Amenities (la misma lista ya parseada)
+        for (String am : amenList) {
+            contents.addCached(am);
         }
 
         // 7. Bathrooms (con contexto)
-        if (bathrooms != null) {
+        if (!Double.isNaN(bathrooms)) {
             // Ej: "3 bathrooms" o "3.5 bathrooms"
-            contents.append(bathrooms).append(" bathrooms ");
+            contents.add(bathrooms + " bathrooms");
         }
         // También agregar el texto original de baños si existe
-        String bathroomsText = get(cols, "bathrooms_text");
-        if (bathroomsText != null)
-            contents.append(bathroomsText).append(" ");
+        contents.addCached(bathroomsText);
 
         // 8. Bedrooms (con contexto)
-        if (bedrooms != null) {
-            contents.append(bedrooms).append(" bedrooms ");
+        if (bedrooms != FieldParsers.SIN_VALOR) {
+            contents.add(bedrooms + " bedrooms");
         }
 
         // 9. Price (con contexto)
-        if (price != null) {
-            contents.append("price ").append(price).append(" ");
+        if (!Double.isNaN(price)) {
+            contents.add("price " + price);
         }
 
         // 10. Number of reviews (con contexto)
-        if (numReviews != null) {
-            contents.append(numReviews).append(" reviews ");
+        if (numReviews != FieldParsers.SIN_VALOR) {
+            contents.add(numReviews + " reviews");
         }
 
         // 11. Review Scores Rating (con contexto)
-        if (rating != null) {
-            contents.append("rating ").append(rating).append(" ");
+        if (!Double.isNaN(rating)) {
+            contents.add("rating " + rating);
         }
 
         // Agregar el mega field al documento
-        // Usamos TextField para que sea tokenizado y analizado (EnglishAnalyzer por
-        // defecto o Standard)
-        // No lo almacenamos (Store.NO) para ahorrar espacio, ya que es solo para
-        // búsqueda
-        doc.add(new TextField("contents", contents.toString(), Field.Store.NO));
+        // TextField para que sea tokenizado y analizado (EnglishAnalyzer); no se
+        // almacena, ya que es solo para búsqueda
+        doc.add(campos.textField(P_CONTENTS, FIELD_CONTENTS, contents));
+
+        // Hash de las columnas de origen (detección de cambios en update)
+        doc.add(campos.numericDocValues(P_CONTENT_HASH, FIELD_CONTENT_HASH, hashContenido));
 
+        registro.anotar(IngestMetrics.Etapa.DOCUMENTO, inicio);
         return doc;
     }
 
     /**
      * Crea un documento Lucene para un host
      */
-    private Document crearDocumentoHost(List<String> cols) {
-        Document doc = new Document();
-
-        // host_id (StringField, no stored como campo principal, pero sí docvalues)
-        String hostId = get(cols, "host_id");
+    private Document crearDocumentoHost(EsquemaCsv esquema, CsvRow cols, String hostId, long hashContenido,
+            ReusableFields campos, IngestMetrics.Registro registro) {
         if (hostId == null || hostId.isBlank()) {
             return null; // host_id obligatorio
         }
-        doc.add(new StringField("host_id", hostId, Field.Store.NO));
-        doc.add(new SortedDocValuesField("host_id", new org.apache.lucene.util.BytesRef(hostId)));
+        // Valores de las columnas, leídos y parseados antes de crear los campos
+        long inicio = System.nanoTime();
+        String hostUrl = cols.get(esquema.hostUrl);
+        String hostName = cols.get(esquema.hostName);
+        String hostSinceStr = cols.get(esquema.hostSince);
+        long hostSince = cols.getFecha(esquema.hostSince);
+        String hostLocation = cols.get(esquema.hostLocation);
+        String hostNeighbourhood = cols.get(esquema.hostNeighbourhood);
+        String hostAbout = htmlToText(cols.get(esquema.hostAbout));
+        String responseTime = cols.get(esquema.hostResponseTime);
+        String superhostStr = cols.get(esquema.hostIsSuperhost);
+        inicio = registro.anotar(IngestMetrics.Etapa.PARSEO, inicio);
+
+        Document doc = campos.documento();
+
+        // host_id (StringField, no stored como campo principal, pero sí docvalues)
+        doc.add(campos.stringField(H_HOST_ID, "host_id", hostId, Field.Store.NO));
+        doc.add(campos.sortedDocValues(H_HOST_ID_DV, "host_id", hostId));
 
         // host_url (StringField, stored - URL)
-        String hostUrl = get(cols, "host_url");
         if (hostUrl != null && !hostUrl.isBlank()) {
-            doc.add(new StringField("host_url", hostUrl.trim(), Field.Store.YES));
+            doc.add(campos.stringField(H_HOST_URL, "host_url", hostUrl.trim(), Field.Store.YES));
         }
 
         // host_name (TextField, stored)
-        addTextField(doc, "host_name", get(cols, "host_name"), true);
+        addTextField(doc, campos, H_HOST_NAME, "host_name", hostName, true);
 
         // host_since (LongPoint + Stored - epoch millis + original)
-        String hostSinceStr = get(cols, "host_since");
-        Long hostSince = parseDate(hostSinceStr);
-        if (hostSince != null) {
-            doc.add(new LongPoint("host_since", hostSince));
-            doc.add(new StoredField("host_since", hostSince));
+        if (hostSince != FieldParsers.SIN_VALOR) {
+            doc.add(campos.longPoint(H_HOST_SINCE, "host_since", hostSince));
+            doc.add(campos.storedLong(H_HOST_SINCE_STORED, "host_since", hostSince));
             // Guardar también el valor original
             if (hostSinceStr != null) {
-                doc.add(new StoredField("host_since_original", hostSinceStr));
+                doc.add(campos.storedString(H_HOST_SINCE_ORIGINAL, "host_since_original", hostSinceStr));
             }
-            doc.add(new NumericDocValuesField("host_since", hostSince));
+            doc.add(campos.numericDocValues(H_HOST_SINCE_DV, "host_since", hostSince));
         }
 
         // host_location (TextField con EnglishAnalyzer, no stored)
-        addTextField(doc, "host_location", get(cols, "host_location"), false);
+        addTextField(doc, campos, H_HOST_LOCATION, "host_location", hostLocation, false, cacheTokens);
 
         // host_neighbourhood (TextField, stored)
-        addTextField(doc, "host_neighbourhood", get(cols, "host_neighbourhood"), true);
+        addTextField(doc, campos, H_HOST_NEIGHBOURHOOD, "host_neighbourhood", hostNeighbourhood, true);
 
         // host_about (TextField con EnglishAnalyzer, stored)
-        addTextField(doc, "host_about", htmlToText(get(cols, "host_about")), true);
+        addTextField(doc, campos, H_HOST_ABOUT, "host_about", hostAbout, true);
 
         // host_response_time (FacetField para facetado + StringField para búsqueda)
         // Normalizar a lowercase para evitar problemas de case-sensitivity con
         // KeywordAnalyzer
-        String responseTime = get(cols, "host_response_time");
         if (responseTime != null && !responseTime.isBlank()) {
             String responseTimeNormalized = responseTime.trim().toLowerCase();
             // Guardar valor original para stored field
-            doc.add(new StoredField("host_response_time_original", responseTime.trim()));
+            doc.add(campos.storedString(H_RESPONSE_TIME_ORIGINAL, "host_response_time_original",
+                    responseTime.trim()));
             doc.add(new FacetField("host_response_time", responseTimeNormalized));
-            doc.add(new StringField("host_response_time", responseTimeNormalized, Field.Store.YES));
-            doc.add(new SortedDocValuesField("host_response_time",
-                    new org.apache.lucene.util.BytesRef(responseTimeNormalized)));
+            doc.add(campos.stringField(H_RESPONSE_TIME, "host_response_time", responseTimeNormalized,
+                    Field.Store.YES));
+            doc.add(campos.sortedDocValues(H_RESPONSE_TIME_DV, "host_response_time", responseTimeNormalized));
         }
 
         // host_is_superhost (IntPoint + Stored + DocValues)
         // t/f -> 1/0
-        String superhostStr = get(cols, "host_is_superhost");
         int isSuperhost = 0;
         if (superhostStr != null && (superhostStr.equalsIgnoreCase("t") || superhostStr.equalsIgnoreCase("true"))) {
             isSuperhost = 1;
         }
-        doc.add(new IntPoint("host_is_superhost", isSuperhost));
-        doc.add(new StoredField("host_is_superhost", isSuperhost));
-        doc.add(new NumericDocValuesField("host_is_superhost", isSuperhost));
+        doc.add(campos.intPoint(H_SUPERHOST, "host_is_superhost", isSuperhost));
+        doc.add(campos.storedInt(H_SUPERHOST_STORED, "host_is_superhost", isSuperhost));
+        doc.add(campos.numericDocValues(H_SUPERHOST_DV, "host_is_superhost", isSuperhost));
 
         // =================================================================================
         // MEGA FIELD (contents) - "General search query" for HOSTS
         // =================================================================================
-        StringBuilder contents = new StringBuilder();
+        ConcatenatedTokenStream contents = new ConcatenatedTokenStream(analizador, FIELD_CONTENTS, cacheTokens);
 
         // 1. Host Name
-        String hostName = get(cols, "host_name");
-        if (hostName != null)
-            contents.append(hostName).append(" ");
+        contents.add(hostName);
 
         // 2. Host Location
-        String hostLocation = get(cols, "host_location");
-        if (hostLocation != null)
-            contents.append(hostLocation).append(" ");
+        contents.addCached(hostLocation);
 
         // 3. Host Neighbourhood
-        String hostNeighbourhood = get(cols, "host_neighbourhood");
-        if (hostNeighbourhood != null)
-            contents.append(hostNeighbourhood).append(" ");
+        contents.add(hostNeighbourhood);
 
         // 4. Host About
-        String hostAbout = get(cols, "host_about");
-        if (hostAbout != null)
-            contents.append(htmlToText(hostAbout)).append(" ");
+        contents.add(hostAbout);
 
         // 5. Host Response Time
-        if (responseTime != null)
-            contents.append(responseTime).append(" ");
+        contents.addCached(responseTime);
 
         // 6. Superhost status
         if (isSuperhost == 1) {
-            contents.append("superhost ");
+            contents.addCached("superhost");
         }
 
         // Agregar el mega field al documento
-        doc.add(new TextField("contents", contents.toString(), Field.Store.NO));
+        doc.add(campos.textField(H_CONTENTS, FIELD_CONTENTS, contents));
 
+        // Hash de las columnas de origen (detección de cambios en update)
+        doc.add(campos.numericDocValues(H_CONTENT_HASH, FIELD_CONTENT_HASH, hashContenido));
+
+        registro.anotar(IngestMetrics.Etapa.DOCUMENTO, inicio);
         return doc;
     }
 
@@ -901,22 +2902,28 @@ public class AirbnbIndexador {
      * Cierra los índices
      */
     private void cerrarIndices(Logger logger) throws IOException {
+        if (lectorPropiedades != null) {
+            lectorPropiedades.close();
+        }
+        if (lectorHosts != null) {
+            lectorHosts.close();
+        }
+        // Fragmentos que no llegaron a fusionarse (ingesta abortada)
+        borrarFragmentos();
+        // El commit final (con sus datos de checkpoint) ya lo ha hecho procesarCSV;
+        // close() solo confirma lo que quede si no se llegó a procesar nada
         if (writerProperties != null) {
-            writerProperties.commit();
             writerProperties.close();
         }
         if (taxoWriterProperties != null) {
-            taxoWriterProperties.commit();
             taxoWriterProperties.close();
             logger.info("Índice de propiedades y taxonomía cerrados");
         }
 
         if (writerHosts != null) {
-            writerHosts.commit();
             writerHosts.close();
         }
         if (taxoWriterHosts != null) {
-            taxoWriterHosts.commit();
             taxoWriterHosts.close();
             logger.info("Índice de hosts y taxonomía cerrados");
         }
@@ -946,8 +2953,17 @@ public class AirbnbIndexador {
                     case "--mode":
                         config.mode = value.isEmpty() ? DEFAULT_MODE : value;
                         break;
+                    case "--input-mode":
+                        config.inputMode = value.isEmpty() ? DEFAULT_INPUT_MODE : value;
+                        if (!"stream".equals(config.inputMode) && !"mmap".equals(config.inputMode)) {
+                            throw new IllegalArgumentException("--input-mode debe ser stream o mmap");
+                        }
+                        break;
                     case "--delimiter":
                         config.delimiter = value.isEmpty() ? DEFAULT_DELIMITER : value;
+                        if (config.delimiter.length() != 1) {
+                            throw new IllegalArgumentException("--delimiter debe ser un único carácter");
+                        }
                         break;
                     case "--encoding":
                         config.encoding = value.isEmpty() ? DEFAULT_ENCODING : value;
@@ -973,236 +2989,461 @@ public class AirbnbIndexador {
                     case "--log-file":
                         config.logFile = value;
                         break;
+                    case "--log-level":
+                        config.logLevel = value.isEmpty() ? DEFAULT_LOG_LEVEL : value;
+                        Logger.nivel(config.logLevel); // validar
+                        break;
+                    case "--metrics-interval":
+                        try {
+                            config.metricsInterval = value.isEmpty() ? DEFAULT_METRICS_INTERVAL
+                                    : Long.parseLong(value);
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("--metrics-interval debe ser un número de segundos");
+                        }
+                        break;
                     case "--dry-run":
                         config.dryRun = true;
                         break;
                     case "--force":
                         config.force = true;
                         break;
+                    case "--reuse-fields":
+                        config.reuseFields = true;
+                        break;
+                    case "--profile":
+                        config.perfilPropiedades = PerfilEscritura.parse(value);
+                        config.perfilHosts = config.perfilPropiedades;
+                        break;
+                    case "--profile-properties":
+                        config.perfilPropiedades = PerfilEscritura.parse(value);
+                        break;
+                    case "--profile-hosts":
+                        config.perfilHosts = PerfilEscritura.parse(value);
+                        break;
+                    case "--commit-policy":
+                        config.politicaCommit = CommitCoordinator.Politica.parse(value);
+                        break;
+                    case "--resume":
+                        config.resume = true;
+                        break;
+                    case "--shards":
+                        try {
+                            config.shards = value.isEmpty() ? 1 : Integer.parseInt(value);
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("--shards debe ser un número");
+                        }
+                        break;
+                    case "--index-sort":
+                        config.indexSort = value.isEmpty() ? "none" : value;
+                        ordenIndice(config.indexSort); // validar
+                        break;
+                    case "--target":
+                        config.target = value.isEmpty() ? DEFAULT_TARGET : value;
+                        if (!"shared".equals(config.target) && !"per-city".equals(config.target)) {
+                            throw new IllegalArgumentException("--target debe ser shared o per-city");
+                        }
+                        break;
+                    case "--duplicates":
+                        config.duplicates = value.isEmpty() ? DEFAULT_DUPLICATES : value;
+                        if (!"first".equals(config.duplicates) && !"last".equals(config.duplicates)) {
+                            throw new IllegalArgumentException("--duplicates debe ser first o last");
+                        }
+                        break;
                 }
             }
         }
+        if (config.resume && config.force) {
+            throw new IllegalArgumentException("--resume no se puede combinar con --force");
+        }
+        if (config.shards > 1) {
+            // Los fragmentos solo existen durante la ingesta: no hay commits intermedios
+            // desde los que reanudar ni índice existente que actualizar
+            if ("update".equals(config.mode) || config.resume) {
+                throw new IllegalArgumentException("--shards solo se puede usar con --mode build o rebuild");
+            }
+            if (config.politicaCommit != null && !config.politicaCommit.soloAlFinal()) {
+                throw new IllegalArgumentException("--shards solo admite --commit-policy end");
+            }
+        }
         return config;
     }
 
     /**
-     * Parsea una línea CSV respetando comillas
+     * Quita las etiquetas HTML y decodifica las entidades (ver {@link HtmlText})
      */
-    private static List<String> parseCsvLine(String line, String delimiter) {
-        List<String> out = new ArrayList<>();
-        if (line == null)
-            return out;
+    private static String htmlToText(String s) {
+        return HtmlText.aTexto(s);
+    }
 
-        StringBuilder cur = new StringBuilder();
-        boolean inQuotes = false;
+    /**
+     * Parsea amenities (array estilo JSON). Cada valor se resuelve en el
+     * diccionario global, que devuelve siempre la misma instancia de String para
+     * el mismo valor: en el caso normal ("Wifi", sin comillas internas) se busca
+     * directamente el rango de caracteres, sin copiarlo.
+     */
+    private static List<String> parseAmenities(String raw) {
+        List<String> res = new ArrayList<>();
+        if (raw == null || raw.isBlank())
+            return res;
+
+        int desde = 0;
+        int hasta = raw.length();
+        while (desde < hasta && raw.charAt(desde) <= ' ')
+            desde++;
+        while (hasta > desde && raw.charAt(hasta - 1) <= ' ')
+            hasta--;
+        if (hasta - desde >= 2 && raw.charAt(desde) == '[' && raw.charAt(hasta - 1) == ']') {
+            desde++;
+            hasta--;
+        }
 
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
+        // Cada elemento acaba en una coma fuera de comillas
+        StringBuilder escape = null;
+        boolean inQuotes = false;
+        int inicio = desde;
+        for (int i = desde; i < hasta; i++) {
+            char c = raw.charAt(i);
             if (c == '"') {
-                if (inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"') {
-                    cur.append('"');
+                if (inQuotes && i + 1 < hasta && raw.charAt(i + 1) == '"') {
                     i++;
                 } else {
                     inQuotes = !inQuotes;
                 }
-            } else if (delimiter.equals(String.valueOf(c)) && !inQuotes) {
-                out.add(cur.toString());
-                cur.setLength(0);
-            } else {
-                cur.append(c);
+            } else if (c == ',' && !inQuotes) {
+                escape = anadirAmenity(res, raw, inicio, i, escape);
+                inicio = i + 1;
             }
         }
-        out.add(cur.toString());
-        return out;
-    }
-
-    /**
-     * Obtiene el valor de una columna por nombre
-     */
-    private String get(List<String> cols, String name) {
-        Integer idx = headerIndex.get(name);
-        if (idx == null || idx < 0 || idx >= cols.size())
-            return null;
-        String v = cols.get(idx);
-        return (v == null || v.isEmpty()) ? null : v;
-    }
+        // Último elemento
+        anadirAmenity(res, raw, inicio, hasta, escape);
 
-    /**
-     * Parsea un entero
-     */
-    private static Integer parseInteger(String s) {
-        if (s == null || s.isBlank())
-            return null;
-        try {
-            return (int) Double.parseDouble(s.trim());
-        } catch (Exception e) {
-            return null;
-        }
+        return res;
     }
 
     /**
-     * Parsea un double
+     * Añade el elemento raw[desde, hasta) (si no queda vacío). Sin comillas
+     * dentro del valor, el valor es el rango sin espacios ni comillas de los
+     * extremos; si no, se desescapa en el StringBuilder (que se crea la primera
+     * vez y se devuelve para los siguientes elementos): "" dentro de comillas
+     * es una comilla y \" también.
      */
-    private static Double parseDouble(String s) {
-        if (s == null || s.isBlank())
-            return null;
-        try {
-            return Double.parseDouble(s.trim());
-        } catch (Exception e) {
-            return null;
+    private static StringBuilder anadirAmenity(List<String> res, String raw, int desde, int hasta,
+            StringBuilder escape) {
+        while (desde < hasta && raw.charAt(desde) <= ' ')
+            desde++;
+        while (hasta > desde && raw.charAt(hasta - 1) <= ' ')
+            hasta--;
+        int a = desde;
+        int b = hasta;
+        if (b - a >= 2 && raw.charAt(a) == '"' && raw.charAt(b - 1) == '"') {
+            a++;
+            b--;
         }
-    }
-
-    /**
-     * Parsea un precio (limpia $ y comas)
-     */
-    private static Double parsePrice(String s) {
-        if (s == null || s.isBlank())
-            return null;
-        String clean = s.replace("$", "").replace(",", "").trim();
-        return parseDouble(clean);
-    }
-
-    /**
-     * Parsea una fecha a epoch millis
-     */
-    private static Long parseDate(String s) {
-        if (s == null || s.isBlank())
-            return null;
-        try {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.ROOT);
-            return sdf.parse(s.trim()).getTime();
-        } catch (ParseException e) {
-            return null;
+        int comilla = raw.indexOf('"', a);
+        if (comilla < 0 || comilla >= b) {
+            while (a < b && raw.charAt(a) <= ' ')
+                a++;
+            while (b > a && raw.charAt(b - 1) <= ' ')
+                b--;
+            if (a < b) {
+                res.add(AMENIDADES.canonica(raw, a, b));
+            }
+            return escape;
         }
-    }
-
-    /**
-     * Limpia HTML básico de texto
-     */
-    private static String htmlToText(String s) {
-        if (s == null)
-            return null;
-        return s.replace("<br />", " ")
-                .replace("<br>", " ")
-                .replace("&nbsp;", " ");
-    }
-
-    /**
-     * Parsea amenities (array estilo JSON)
-     */
-    private static List<String> parseAmenities(String raw) {
-        List<String> res = new ArrayList<>();
-        if (raw == null || raw.isBlank())
-            return res;
 
-        String s = raw.trim();
-        if (s.startsWith("[") && s.endsWith("]")) {
-            s = s.substring(1, s.length() - 1);
+        if (escape == null) {
+            escape = new StringBuilder();
         }
-
-        StringBuilder cur = new StringBuilder();
+        escape.setLength(0);
         boolean inQuotes = false;
-
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
+        for (int i = desde; i < hasta; i++) {
+            char c = raw.charAt(i);
             if (c == '"') {
-                if (inQuotes && i + 1 < s.length() && s.charAt(i + 1) == '"') {
-                    cur.append('"');
+                if (inQuotes && i + 1 < hasta && raw.charAt(i + 1) == '"') {
+                    escape.append('"');
                     i++;
                 } else {
                     inQuotes = !inQuotes;
                 }
-            } else if (c == ',' && !inQuotes) {
-                String amenity = cur.toString().trim();
-                if (amenity.startsWith("\"") && amenity.endsWith("\"")) {
-                    amenity = amenity.substring(1, amenity.length() - 1);
-                }
-                amenity = amenity.replace("\\\"", "\"");
-                if (!amenity.isEmpty()) {
-                    res.add(amenity);
-                }
-                cur.setLength(0);
             } else {
-                cur.append(c);
+                escape.append(c);
             }
         }
-
-        // Último elemento
-        String amenity = cur.toString().trim();
-        if (amenity.startsWith("\"") && amenity.endsWith("\"")) {
+        String amenity = escape.toString().trim();
+        if (amenity.length() >= 2 && amenity.startsWith("\"") && amenity.endsWith("\"")) {
             amenity = amenity.substring(1, amenity.length() - 1);
         }
         amenity = amenity.replace("\\\"", "\"");
         if (!amenity.isEmpty()) {
-            res.add(amenity);
+            res.add(AMENIDADES.canonica(amenity));
         }
-
-        return res;
+        return escape;
     }
 
     /**
      * Añade un TextField al documento
      */
-    private static void addTextField(Document doc, String field, String value, boolean store) {
+    private static void addTextField(Document doc, ReusableFields campos, int slot, String field, String value,
+            boolean store) {
+        addTextField(doc, campos, slot, field, value, store, null);
+    }
+
+    private static void addTextField(Document doc, ReusableFields campos, int slot, String field, String value,
+            boolean store, TokenCache cache) {
         if (value == null || value.isBlank())
             return;
-        doc.add(new TextField(field, value, store ? Field.Store.YES : Field.Store.NO));
+        doc.add(campos.textField(slot, field, value, store ? Field.Store.YES : Field.Store.NO, cache));
     }
 
     /**
-     * Clase simple para logging
+     * Logging asíncrono por lotes.
+     * 
+     * Quien registra un mensaje solo lo deja en una cola circular sin cerrojos
+     * (MpscRingBuffer); un hilo de fondo los agrupa y los escribe en consola y en
+     * --log-file con una escritura y un flush por lote, cuando el lote llega a
+     * TAMANO_LOTE caracteres o han pasado INTERVALO_FLUSH_MS desde su primer
+     * mensaje. Si la cola está llena, los mensajes DEBUG e INFO se descartan y se
+     * avisa del número de descartes en el siguiente lote, así que nunca frenan la
+     * ingesta. WARN y ERROR no se pierden (son los que dicen qué filas han
+     * fallado): quien los registra espera a que el hilo escritor haga sitio.
+     * close() (y un shutdown hook, si el proceso termina antes) vacía la cola.
+     * 
+     * Los mensajes por debajo de --log-level se descartan con una comparación; en
+     * el camino caliente se comprueba debugActivo() antes de construir el texto.
      */
     private static class Logger {
-        private final PrintWriter logWriter;
 
-        public Logger(String logFile) throws IOException {
-            if (logFile != null && !logFile.isEmpty()) {
-                logWriter = new PrintWriter(new FileWriter(logFile, true));
-            } else {
-                logWriter = null;
+        enum Nivel {
+            DEBUG, INFO, WARN, ERROR
+        }
+
+        private static final int CAPACIDAD = 8192;
+        private static final int TAMANO_LOTE = 32 * 1024;
+        private static final long INTERVALO_FLUSH_MS = 100;
+        // Espera del hilo escritor cuando la cola está vacía
+        private static final long ESPERA_NANOS = 2_000_000;
+        // Espera de quien registra un WARN o ERROR con la cola llena, entre intentos
+        private static final long ESPERA_COLA_LLENA_NANOS = 50_000;
+
+        private record Mensaje(Nivel nivel, String prefijo, String texto) {
+        }
+
+        private final Salida salida;
+        private final Nivel minimo;
+        // Se antepone a cada mensaje (p.ej. la ciudad con --target per-city)
+        private final String prefijo;
+
+        public Logger(String logFile, Nivel minimo) throws IOException {
+            Writer fichero = logFile != null && !logFile.isEmpty()
+                    ? new BufferedWriter(new FileWriter(logFile, true))
+                    : null;
+            this.salida = new Salida(fichero);
+            this.minimo = minimo;
+            this.prefijo = "";
+        }
+
+        private Logger(Salida salida, Nivel minimo, String prefijo) {
+            this.salida = salida;
+            this.minimo = minimo;
+            this.prefijo = prefijo;
+        }
+
+        /**
+         * Nivel de --log-level (debug|info|warn|error)
+         */
+        static Nivel nivel(String nombre) {
+            try {
+                return Nivel.valueOf(nombre.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("--log-level debe ser debug, info, warn o error");
             }
         }
 
+        /**
+         * Logger que escribe en los mismos destinos con un prefijo más
+         */
+        public Logger conPrefijo(String prefijo) {
+            return new Logger(salida, minimo, this.prefijo + prefijo);
+        }
+
+        public boolean debugActivo() {
+            return minimo == Nivel.DEBUG;
+        }
+
         public void info(String msg) {
-            String fullMsg = "[INFO] " + msg;
-            System.out.println(fullMsg);
-            if (logWriter != null) {
-                logWriter.println(fullMsg);
-                logWriter.flush();
-            }
+            registrar(Nivel.INFO, msg);
         }
 
         public void warn(String msg) {
-            String fullMsg = "[WARN] " + msg;
-            System.err.println(fullMsg);
-            if (logWriter != null) {
-                logWriter.println(fullMsg);
-                logWriter.flush();
-            }
+            registrar(Nivel.WARN, msg);
         }
 
         public void error(String msg) {
-            String fullMsg = "[ERROR] " + msg;
-            System.err.println(fullMsg);
-            if (logWriter != null) {
-                logWriter.println(fullMsg);
-                logWriter.flush();
-            }
+            registrar(Nivel.ERROR, msg);
         }
 
         public void debug(String msg) {
-            String fullMsg = "[DEBUG] " + msg;
-            System.out.println(fullMsg);
-            if (logWriter != null) {
-                logWriter.println(fullMsg);
-                logWriter.flush();
+            registrar(Nivel.DEBUG, msg);
+        }
+
+        private void registrar(Nivel nivel, String msg) {
+            if (nivel.compareTo(minimo) < 0) {
+                return;
+            }
+            Mensaje m = new Mensaje(nivel, prefijo, msg);
+            if (salida.cola.offer(m)) {
+                return;
+            }
+            if (nivel.compareTo(Nivel.WARN) < 0) {
+                salida.descartados.increment();
+            } else {
+                salida.encolarSinDescartar(m);
             }
         }
 
+        /**
+         * Escribe lo pendiente y termina el hilo escritor (los loggers conPrefijo
+         * comparten la salida: basta con cerrar el original)
+         */
         public void close() {
-            if (logWriter != null) {
-                logWriter.close();
+            salida.cerrar();
+        }
+
+        /**
+         * Cola, hilo escritor y destinos de un logger y de sus loggers conPrefijo
+         */
+        private static final class Salida implements Runnable {
+            final MpscRingBuffer<Mensaje> cola = new MpscRingBuffer<>(CAPACIDAD);
+            final LongAdder descartados = new LongAdder();
+            private final Writer fichero;
+            private final Thread hilo;
+            private final Thread alApagar;
+            private volatile boolean cerrado;
+
+            // Lote en construcción (solo el hilo escritor). WARN y ERROR van a
+            // stderr: al cambiar de flujo se escribe lo anterior para conservar el orden
+            private final StringBuilder consola = new StringBuilder();
+            private final StringBuilder lineasFichero = new StringBuilder();
+            private PrintStream flujo = System.out;
+            private boolean ficheroRoto;
+
+            Salida(Writer fichero) {
+                this.fichero = fichero;
+                this.hilo = new Thread(this, "indexador-log");
+                this.hilo.setDaemon(true);
+                this.hilo.start();
+                this.alApagar = new Thread(this::cerrar, "indexador-log-cierre");
+                Runtime.getRuntime().addShutdownHook(alApagar);
+            }
+
+            @Override
+            public void run() {
+                long inicioLote = -1;
+                while (true) {
+                    // Lo registrado antes de cerrar se escribe en esta pasada
+                    boolean fin = cerrado;
+                    for (Mensaje m; (m = cola.poll()) != null;) {
+                        if (inicioLote < 0) {
+                            inicioLote = System.nanoTime();
+                        }
+                        anotar(m);
+                        if (consola.length() + lineasFichero.length() >= TAMANO_LOTE) {
+                            escribir();
+                            inicioLote = -1;
+                        }
+                    }
+                    if (fin) {
+                        escribir();
+                        return;
+                    }
+                    if (inicioLote >= 0 && System.nanoTime() - inicioLote >= INTERVALO_FLUSH_MS * 1_000_000) {
+                        escribir();
+                        inicioLote = -1;
+                    }
+                    LockSupport.parkNanos(this, ESPERA_NANOS);
+                }
+            }
+
+            private void anotar(Mensaje m) {
+                long n = descartados.sumThenReset();
+                if (n > 0) {
+                    anotar(new Mensaje(Nivel.WARN, "", n + " mensajes de log descartados (cola llena)"));
+                }
+                PrintStream destino = m.nivel().compareTo(Nivel.WARN) >= 0 ? System.err : System.out;
+                if (destino != flujo) {
+                    escribirConsola();
+                    flujo = destino;
+                }
+                int inicio = consola.length();
+                consola.append('[').append(m.nivel().name()).append("] ").append(m.prefijo()).append(m.texto())
+                        .append(System.lineSeparator());
+                if (fichero != null) {
+                    lineasFichero.append(consola, inicio, consola.length());
+                }
+            }
+
+            private void escribirConsola() {
+                if (consola.length() > 0) {
+                    flujo.print(consola);
+                    flujo.flush();
+                    consola.setLength(0);
+                }
+            }
+
+            private void escribir() {
+                escribirConsola();
+                if (fichero != null && lineasFichero.length() > 0 && !ficheroRoto) {
+                    try {
+                        fichero.append(lineasFichero);
+                        fichero.flush();
+                    } catch (IOException e) {
+                        ficheroRoto = true;
+                        System.err.println("[ERROR] No se puede escribir el log: " + e.getMessage());
+                    }
+                }
+                lineasFichero.setLength(0);
+            }
+
+            /**
+             * Encola m esperando a que haya sitio. Si el hilo escritor ya ha
+             * terminado, lo escribe directamente en stderr
+             */
+            void encolarSinDescartar(Mensaje m) {
+                while (!cola.offer(m)) {
+                    if (!hilo.isAlive()) {
+                        System.err.println("[" + m.nivel().name() + "] " + m.prefijo() + m.texto());
+                        return;
+                    }
+                    LockSupport.unpark(hilo);
+                    LockSupport.parkNanos(this, ESPERA_COLA_LLENA_NANOS);
+                }
+            }
+
+            synchronized void cerrar() {
+                if (cerrado) {
+                    return;
+                }
+                cerrado = true;
+                LockSupport.unpark(hilo);
+                try {
+                    hilo.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (fichero != null) {
+                    try {
+                        fichero.close();
+                    } catch (IOException e) {
+                        // ya se ha escrito todo lo posible
+                    }
+                }
+                if (Thread.currentThread() != alApagar) {
+                    try {
+                        Runtime.getRuntime().removeShutdownHook(alApagar);
+                    } catch (IllegalStateException e) {
+                        // la JVM ya se está apagando; el gancho verá el log ya cerrado
+                    }
+                }
             }
         }
     }
@@ -0,0 +1,79 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Diccionario global (thread-safe) de amenities: devuelve una única instancia
+ * de String por valor distinto.
+ *
+ * En todo el dataset hay solo unos miles de amenities distintas repetidas en
+ * millones de filas, así que casi todas las búsquedas aciertan. La búsqueda
+ * se hace sobre un rango de caracteres de la fila, sin crear el String: solo
+ * se crea la primera vez que aparece un valor. Los String canónicos tienen el
+ * hash ya calculado, lo que abarata también los mapas que los usen como clave.
+ *
+ * Tabla de direccionamiento abierto (sondeo lineal) de tamaño fijo sobre un
+ * AtomicReferenceArray: las lecturas no usan cerrojos y una inserción ocupa
+ * un hueco libre con compareAndSet. El hash es el de String.hashCode, para
+ * compararlo directamente con el ya cacheado en cada entrada. Como no se
+ * borra ni se redimensiona nunca, una entrada no cambia de hueco. Si se llena
+ * (datos inesperados con muchísimos valores distintos), los valores nuevos se
+ * devuelven sin guardar.
+ */
+public final class AmenityDictionary {
+
+    private static final int CAPACIDAD = 1 << 15;
+    // Valores distintos como mucho (carga máxima 0.5)
+    private static final int MAX_VALORES = CAPACIDAD / 2;
+
+    private final AtomicReferenceArray<String> tabla = new AtomicReferenceArray<>(CAPACIDAD);
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Instancia canónica de s[desde, hasta)
+     */
+    public String canonica(String s, int desde, int hasta) {
+        int h = 0;
+        for (int i = desde; i < hasta; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        int len = hasta - desde;
+        int mascara = CAPACIDAD - 1;
+        for (int hueco = mezclar(h) & mascara;; hueco = (hueco + 1) & mascara) {
+            String e = tabla.get(hueco);
+            while (e == null) {
+                if (size.get() >= MAX_VALORES) {
+                    return s.substring(desde, hasta);
+                }
+                String nuevo = s.substring(desde, hasta);
+                if (tabla.compareAndSet(hueco, null, nuevo)) {
+                    size.incrementAndGet();
+                    return nuevo;
+                }
+                // Otro hilo ha ocupado el hueco: puede ser el mismo valor
+                e = tabla.get(hueco);
+            }
+            if (e.hashCode() == h && e.length() == len && e.regionMatches(0, s, desde, len)) {
+                return e;
+            }
+        }
+    }
+
+    /**
+     * Instancia canónica de s
+     */
+    public String canonica(String s) {
+        return canonica(s, 0, s.length());
+    }
+
+    /**
+     * Número de valores distintos guardados
+     */
+    public int size() {
+        return size.get();
+    }
+
+    // Lleva los bits altos del hash a los bajos, que son los que eligen el hueco
+    private static int mezclar(int h) {
+        return h ^ (h >>> 16);
+    }
+}
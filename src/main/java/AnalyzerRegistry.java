@@ -0,0 +1,100 @@
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.KeywordTokenizer;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Analizadores del proceso, compartidos por el indexador y las búsquedas.
+ *
+ * Un Analyzer guarda los componentes de su cadena (tokenizer + filtros) por
+ * hilo, para reutilizarlos en cada tokenStream(). Antes había un
+ * EnglishAnalyzer por campo y un juego completo por cada llamada a
+ * crearAnalizador(), así que cada hilo acababa con una copia de la cadena
+ * inglesa por campo y por juego. Aquí hay una sola instancia de cada
+ * analizador y todos los campos del mismo tipo usan la misma: como la cadena
+ * no depende del nombre del campo, basta con la estrategia de reutilización
+ * por defecto (GLOBAL_REUSE_STRATEGY), con un único juego de componentes por
+ * hilo y analizador, y no PER_FIELD_REUSE_STRATEGY, que guardaría uno por
+ * campo. Cada hilo tiene el suyo, así que es seguro con cualquier número de
+ * hilos; los de hilos que terminan se liberan solos (CloseableThreadLocal).
+ *
+ * La única condición es la de siempre: un hilo no debe tener abiertos a la
+ * vez dos TokenStream del mismo analizador, y IndexWriter analiza los campos
+ * de uno en uno. Los analizadores no se cierran nunca (viven lo que el
+ * proceso).
+ */
+public final class AnalyzerRegistry {
+
+    private static final Analyzer ESTANDAR = new StandardAnalyzer();
+    private static final Analyzer INGLES = new EnglishAnalyzer();
+    // Campos categóricos: keyword + lowercase (case-insensitive)
+    private static final Analyzer KEYWORD_MINUSCULAS = new Analyzer() {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            KeywordTokenizer tokenizer = new KeywordTokenizer();
+            TokenStream filter = new LowerCaseFilter(tokenizer);
+            return new TokenStreamComponents(tokenizer, filter);
+        }
+    };
+
+    private static final Analyzer POR_CAMPO = crearPorCampo();
+
+    // Valores cortos repetidos de los campos en inglés (amenity, bathrooms_text,
+    // host_location... y los mismos dentro de contents)
+    private static final int CACHE_MAX_ENTRADAS = 4096;
+    private static final int CACHE_MAX_LONGITUD = 100;
+    private static final TokenCache CACHE_INGLES = new TokenCache(INGLES, CACHE_MAX_ENTRADAS, CACHE_MAX_LONGITUD);
+
+    private AnalyzerRegistry() {
+    }
+
+    /**
+     * Analizador con configuración por campo de los índices (el del
+     * IndexWriter y el de los QueryParser)
+     */
+    public static Analyzer porCampo() {
+        return POR_CAMPO;
+    }
+
+    /**
+     * EnglishAnalyzer compartido por todos los campos en inglés
+     */
+    public static Analyzer ingles() {
+        return INGLES;
+    }
+
+    /**
+     * Caché de tokens del EnglishAnalyzer compartido
+     */
+    public static TokenCache cacheIngles() {
+        return CACHE_INGLES;
+    }
+
+    private static Analyzer crearPorCampo() {
+        Map<String, Analyzer> perField = new HashMap<>();
+
+        // Campos en inglés
+        perField.put("description", INGLES);
+        perField.put("neighborhood_overview", INGLES);
+        perField.put("host_about", INGLES);
+        perField.put("host_location", INGLES);
+        perField.put(AirbnbIndexador.FIELD_CONTENTS, INGLES);
+        perField.put("amenity", INGLES);
+        perField.put("bathrooms_text", INGLES);
+
+        // Campos categóricos
+        perField.put("neighbourhood_cleansed", KEYWORD_MINUSCULAS);
+        perField.put("property_type", KEYWORD_MINUSCULAS);
+        perField.put("host_response_time", KEYWORD_MINUSCULAS);
+
+        // PerFieldAnalyzerWrapper no guarda componentes propios: usa los del
+        // analizador de cada campo
+        return new PerFieldAnalyzerWrapper(ESTANDAR, perField);
+    }
+}
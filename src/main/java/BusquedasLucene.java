@@ -17,6 +17,7 @@ import org.apache.lucene.document.LatLonPoint;
 import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
@@ -32,6 +33,9 @@ import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldCollectorManager;
+import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
@@ -47,7 +51,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 import java.time.LocalDate;
-import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 
@@ -137,7 +141,7 @@ public class BusquedasLucene {
 
         // Reutilizar el analizador y similarity del indexador para garantizar
         // consistencia
-        Analyzer analyzer = AirbnbIndexador.crearAnalizador();
+        Analyzer analyzer = AnalyzerRegistry.porCampo();
         Similarity similarity = AirbnbIndexador.crearSimilarity();
 
         // Búsqueda en el índice
@@ -1284,13 +1288,14 @@ public class BusquedasLucene {
     }
 
     /**
-     * Helper: Convierte una fecha en formato YYYY-MM-DD a epoch millis
+     * Helper: Convierte una fecha en formato YYYY-MM-DD a epoch millis (inicio del
+     * día en UTC, como el campo host_since del índice)
      * Acepta: "2008-07-11"
      */
     private long parseDate(String input) throws DateTimeParseException {
         String trimmed = input.trim();
         LocalDate date = LocalDate.parse(trimmed, DateTimeFormatter.ISO_LOCAL_DATE);
-        return date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return date.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
     }
 
     /**
@@ -1299,7 +1304,7 @@ public class BusquedasLucene {
     private String formatTimestamp(long timestamp) {
         try {
             Instant instant = Instant.ofEpochMilli(timestamp);
-            LocalDate date = instant.atZone(ZoneId.systemDefault()).toLocalDate();
+            LocalDate date = instant.atZone(ZoneOffset.UTC).toLocalDate();
             return date.format(DateTimeFormatter.ISO_LOCAL_DATE);
         } catch (Exception e) {
             return String.valueOf(timestamp);
@@ -1334,6 +1339,7 @@ public class BusquedasLucene {
             System.out.println("\n=== 4. CONSULTAS ORDENADAS ===");
             System.out.println("4.1. Ordenar por 'number_of_reviews' (descendente) en Properties");
             System.out.println("4.2. Ordenar por 'host_since' (más antiguo primero) en Hosts");
+            System.out.println("4.3. Ordenar por 'price' (más barato primero) en Properties");
             System.out.println("0. Volver al menú principal");
             System.out.print("Selecciona opción: ");
 
@@ -1352,6 +1358,10 @@ public class BusquedasLucene {
                     case "2":
                         ejecutarQueryOrdenadaPorHostSince(analyzer, similarity, in);
                         break;
+                    case "4.3":
+                    case "3":
+                        ejecutarQueryOrdenadaPorPrecio(analyzer, similarity, in);
+                        break;
                     default:
                         System.out.println("Opción no válida.");
                         continue;
@@ -1384,13 +1394,12 @@ public class BusquedasLucene {
             query = new MatchAllDocsQuery();
         }
 
-        // Logica de búsqueda con Sort
-        Sort sort = new Sort(new SortField("number_of_reviews", SortField.Type.INT, true)); // true = descendente
+        // Logica de búsqueda con Sort (el mismo SortField que --index-sort reviews)
+        Sort sort = new Sort(AirbnbIndexador.ordenPorReviews()); // descendente
         IndexReader reader = DirectoryReader.open(FSDirectory.open(Paths.get(indexPathProperties)));
         IndexSearcher searcher = new IndexSearcher(reader);
         searcher.setSimilarity(similarity);
-        // doDocScores=true para calcular scores incluso cuando se ordena por un campo
-        TopDocs hits = searcher.search(query, MAX_RESULTADOS_BUSQUEDA, sort, true);
+        TopDocs hits = buscarOrdenado(searcher, query, sort);
         mostrarResultados(searcher, hits);
         reader.close();
 
@@ -1405,6 +1414,86 @@ public class BusquedasLucene {
         }
     }
 
+    /**
+     * 4.3: Consulta ordenada por 'price' (más barato primero) en Properties
+     */
+    private void ejecutarQueryOrdenadaPorPrecio(Analyzer analyzer, Similarity similarity, BufferedReader in)
+            throws IOException, ParseException {
+        System.out.println("\n=== 4.3: Ordenar por 'price' ASC (Properties) ===");
+        System.out.println("Nota: Si ingresa una consulta, se buscará en el campo 'description' por defecto.");
+        System.out.println("      Si deja la consulta vacía (Enter), se devolverán todos los documentos.");
+        System.out.print("Ingrese la consulta textual (o Enter para buscar todos): ");
+        String consulta = in.readLine();
+
+        Query query = null;
+        if (consulta != null && !consulta.trim().isEmpty()) {
+            QueryParser parser = new QueryParser("description", analyzer);
+            query = parser.parse(consulta.trim());
+        } else {
+            query = new MatchAllDocsQuery();
+        }
+
+        // El mismo SortField que --index-sort price (sin precio, al final)
+        Sort sort = new Sort(AirbnbIndexador.ordenPorPrecio());
+        IndexReader reader = DirectoryReader.open(FSDirectory.open(Paths.get(indexPathProperties)));
+        IndexSearcher searcher = new IndexSearcher(reader);
+        searcher.setSimilarity(similarity);
+        TopDocs hits = buscarOrdenado(searcher, query, sort);
+        mostrarResultados(searcher, hits);
+        reader.close();
+
+        System.out.println("\n=== CONFIGURACIÓN DE BÚSQUEDA ===");
+        System.out.println("Índice: Properties");
+        System.out.println("Ordenamiento: price (ascendente - más baratas primero)");
+        if (consulta != null && !consulta.trim().isEmpty()) {
+            System.out.println("Campo de búsqueda: description");
+            System.out.println("Consulta: " + consulta.trim());
+        } else {
+            System.out.println("Consulta: Todos los documentos (sin filtro)");
+        }
+    }
+
+    /**
+     * Búsqueda de los MAX_RESULTADOS_BUSQUEDA primeros según sort, con score.
+     * 
+     * Si el índice se creó con un orden que empieza por sort (--index-sort del
+     * indexador), los documentos de cada segmento ya están en ese orden y la
+     * recogida se corta en cuanto hay k resultados: el coste depende de k y no
+     * del número de coincidencias. A cambio, el total de coincidencias pasa a
+     * ser una cota inferior.
+     */
+    private static TopDocs buscarOrdenado(IndexSearcher searcher, Query query, Sort sort) throws IOException {
+        if (!ordenadoPor(searcher.getIndexReader(), sort)) {
+            // doDocScores=true para calcular scores incluso cuando se ordena por un campo
+            return searcher.search(query, MAX_RESULTADOS_BUSQUEDA, sort, true);
+        }
+        System.out.println("El índice está ordenado por " + sort + ": corte anticipado tras "
+                + MAX_RESULTADOS_BUSQUEDA + " resultados");
+        TopDocs hits = searcher.search(query,
+                new TopFieldCollectorManager(sort, MAX_RESULTADOS_BUSQUEDA, null, MAX_RESULTADOS_BUSQUEDA));
+        TopFieldCollector.populateScores(hits.scoreDocs, searcher, query);
+        return hits;
+    }
+
+    /**
+     * Indica si todos los segmentos están ordenados por un orden que empieza por sort
+     */
+    private static boolean ordenadoPor(IndexReader reader, Sort sort) {
+        SortField[] buscados = sort.getSort();
+        for (LeafReaderContext hoja : reader.leaves()) {
+            Sort orden = hoja.reader().getMetaData().sort();
+            if (orden == null || orden.getSort().length < buscados.length) {
+                return false;
+            }
+            for (int i = 0; i < buscados.length; i++) {
+                if (!buscados[i].equals(orden.getSort()[i])) {
+                    return false;
+                }
+            }
+        }
+        return !reader.leaves().isEmpty();
+    }
+
     /**
      * 4.2: Consulta ordenada por 'host_since' (más antiguo primero) en Hosts
      */
@@ -1949,7 +2038,12 @@ public class BusquedasLucene {
         }
         int resultadosMostrados = hits.scoreDocs.length;
         System.out.println("\n=== RESULTADOS ===");
-        System.out.println("Total de coincidencias: " + totalCoincidencias);
+        if (hits.totalHits.relation() == TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO) {
+            // Recogida cortada antes de contar todas (ver buscarOrdenado)
+            System.out.println("Total de coincidencias: al menos " + totalCoincidencias);
+        } else {
+            System.out.println("Total de coincidencias: " + totalCoincidencias);
+        }
         System.out.println("Mostrando: " + resultadosMostrados + " de " + totalCoincidencias +
                 " (limitado por MAX_RESULTADOS_BUSQUEDA = " + MAX_RESULTADOS_BUSQUEDA + ")");
         System.out.println();
@@ -0,0 +1,323 @@
+import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
+import org.apache.lucene.index.IndexWriter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Coordina los commits de los cuatro writers (dos índices y dos taxonomías)
+ * como un grupo.
+ *
+ * Cada commit primero confirma las taxonomías y después los índices, así un
+ * índice confirmado nunca referencia ordinales de faceta que no estén en su
+ * taxonomía confirmada. Los cuatro llevan los mismos datos de usuario
+ * (generación, fichero de origen, byte y número de filas), de modo que cualquier
+ * commit es un punto de reanudación.
+ *
+ * Para que el byte guardado sea exacto (todo lo anterior indexado, nada de lo
+ * posterior), los workers procesan cada lote de filas dentro de
+ * entrar()/salir() y el commit espera a que no haya ningún lote a medias.
+ *
+ * Cuándo se hace commit lo decide una {@link Politica}: por tiempo, por bytes
+ * leídos, por RAM de los writers o por filas; "end" solo lo hace al final.
+ */
+public final class CommitCoordinator {
+
+    // Claves de los datos de usuario de cada commit
+    public static final String GENERACION = "checkpoint.generation";
+    public static final String ORIGEN = "checkpoint.source";
+    public static final String OFFSET = "checkpoint.offset";
+    public static final String FILAS = "checkpoint.rows";
+    public static final String PENDIENTE = "checkpoint.pending";
+    public static final String COMPLETO = "checkpoint.complete";
+
+    /**
+     * Umbrales de commit; 0 = desactivado. Con todos a 0 solo hay commit al final.
+     */
+    public record Politica(long segundos, long bytes, long ramBytes, long filas) {
+
+        public static final Politica FINAL = new Politica(0, 0, 0, 0);
+
+        /**
+         * Parsea "end" o una lista "time=60,bytes=512,ram=256,rows=5000" (segundos,
+         * MB leídos, MB de RAM de los writers y filas)
+         */
+        public static Politica parse(String spec) {
+            String s = spec.trim().toLowerCase(Locale.ROOT);
+            if (s.isEmpty() || "end".equals(s)) {
+                return FINAL;
+            }
+            long segundos = 0, bytes = 0, ram = 0, filas = 0;
+            for (String parte : s.split(",")) {
+                String[] kv = parte.trim().split("=", 2);
+                long v;
+                try {
+                    v = kv.length == 2 ? Long.parseLong(kv[1].trim()) : -1;
+                } catch (NumberFormatException e) {
+                    v = -1;
+                }
+                if (v <= 0) {
+                    throw new IllegalArgumentException("Política de commit no válida: " + parte);
+                }
+                switch (kv[0].trim()) {
+                    case "time" -> segundos = v;
+                    case "bytes" -> bytes = v * 1024 * 1024;
+                    case "ram" -> ram = v * 1024 * 1024;
+                    case "rows" -> filas = v;
+                    default -> throw new IllegalArgumentException("Política de commit no válida: " + parte
+                            + " (end|time=<s>,bytes=<MB>,ram=<MB>,rows=<n>)");
+                }
+            }
+            return new Politica(segundos, bytes, ram, filas);
+        }
+
+        public boolean soloAlFinal() {
+            return segundos == 0 && bytes == 0 && ramBytes == 0 && filas == 0;
+        }
+
+        @Override
+        public String toString() {
+            if (soloAlFinal()) {
+                return "end";
+            }
+            StringBuilder sb = new StringBuilder();
+            if (segundos > 0) {
+                sb.append(",time=").append(segundos).append('s');
+            }
+            if (bytes > 0) {
+                sb.append(",bytes=").append(bytes / (1024 * 1024)).append("MB");
+            }
+            if (ramBytes > 0) {
+                sb.append(",ram=").append(ramBytes / (1024 * 1024)).append("MB");
+            }
+            if (filas > 0) {
+                sb.append(",rows=").append(filas);
+            }
+            return sb.substring(1);
+        }
+    }
+
+    /**
+     * Trabajo que se hace con los workers en pausa justo antes de cada commit
+     */
+    @FunctionalInterface
+    public interface AccionPrevia {
+        void ejecutar() throws IOException;
+    }
+
+    private final IndexWriter writerProperties;
+    private final IndexWriter writerHosts;
+    private final DirectoryTaxonomyWriter taxoProperties;
+    private final DirectoryTaxonomyWriter taxoHosts;
+    private final Politica politica;
+
+    // Los workers toman la parte de lectura mientras procesan un lote; el commit,
+    // la de escritura
+    private final ReentrantReadWriteLock quiescencia = new ReentrantReadWriteLock();
+    private final ReentrantLock commitEnCurso = new ReentrantLock();
+
+    private final LongAdder filas = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicLong generacion;
+
+    // Origen y posición de la ingesta actual (ver iniciar())
+    private String origen = "";
+    private LongSupplier offset = () -> -1;
+    private Supplier<String> pendiente = () -> null;
+    private BooleanSupplier cancelado = () -> false;
+    private AccionPrevia antesDeCommit = () -> {
+    };
+
+    // Estado en el último commit
+    private long ultimoCommitNanos = System.nanoTime();
+    private long filasUltimoCommit = 0;
+    private long bytesUltimoCommit = 0;
+
+    public CommitCoordinator(IndexWriter writerProperties, IndexWriter writerHosts,
+            DirectoryTaxonomyWriter taxoProperties, DirectoryTaxonomyWriter taxoHosts, Politica politica) {
+        this.writerProperties = writerProperties;
+        this.writerHosts = writerHosts;
+        this.taxoProperties = taxoProperties;
+        this.taxoHosts = taxoHosts;
+        this.politica = politica;
+        // Al añadir a un índice existente se continúa su numeración de generaciones
+        this.generacion = new AtomicLong(leerLong(datosCommit(writerProperties), GENERACION, 0));
+    }
+
+    /**
+     * Datos de usuario del último commit de un writer (vacío si no hay)
+     */
+    public static Map<String, String> datosCommit(IndexWriter writer) {
+        Map<String, String> datos = new LinkedHashMap<>();
+        Iterable<Map.Entry<String, String>> it = writer.getLiveCommitData();
+        if (it != null) {
+            for (Map.Entry<String, String> e : it) {
+                datos.put(e.getKey(), e.getValue());
+            }
+        }
+        return datos;
+    }
+
+    public static long leerLong(Map<String, String> datos, String clave, long porDefecto) {
+        String v = datos.get(clave);
+        if (v == null) {
+            return porDefecto;
+        }
+        try {
+            return Long.parseLong(v);
+        } catch (NumberFormatException e) {
+            return porDefecto;
+        }
+    }
+
+    /**
+     * Fija el origen de la ingesta y cómo obtener su posición en un commit
+     *
+     * @param origen    fichero que se indexa
+     * @param offset    byte hasta el que está todo indexado (-1 si no se conoce);
+     *                  se consulta con los workers en pausa
+     * @param pendiente rangos de bytes que faltan ("ini-fin,..."), o null si todo
+     *                  lo anterior a offset está indexado y nada de lo posterior
+     * @param cancelado si devuelve true no se hacen más commits (p.ej. al abortar)
+     */
+    public void iniciar(String origen, LongSupplier offset, Supplier<String> pendiente, BooleanSupplier cancelado) {
+        this.origen = origen;
+        this.offset = offset;
+        this.pendiente = pendiente;
+        this.cancelado = cancelado;
+    }
+
+    /**
+     * Fija el trabajo pendiente que debe quedar escrito en cada commit (se ejecuta
+     * en el hilo que hace el commit, con los workers en pausa)
+     */
+    public void antesDeCommit(AccionPrevia accion) {
+        this.antesDeCommit = accion;
+    }
+
+    /**
+     * Marca el inicio de un lote de trabajo; un commit espera a que termine
+     */
+    public void entrar() {
+        quiescencia.readLock().lock();
+    }
+
+    public void salir() {
+        quiescencia.readLock().unlock();
+    }
+
+    /**
+     * Contabiliza filas y bytes ya indexados (dentro de entrar()/salir())
+     */
+    public void registrar(long numFilas, long numBytes) {
+        filas.add(numFilas);
+        bytes.add(numBytes);
+    }
+
+    /**
+     * Al reanudar, cuenta las filas ya indexadas en el checkpoint de partida
+     */
+    public void continuarDesde(long filasPrevias) {
+        filas.add(filasPrevias);
+        filasUltimoCommit = filas.sum();
+    }
+
+    public long filas() {
+        return filas.sum();
+    }
+
+    /**
+     * Hace commit si la política lo pide. No debe llamarse entre entrar() y
+     * salir(). Si otro hilo ya está haciendo commit, no hace nada.
+     *
+     * @return los datos del commit realizado, o null si no ha habido commit
+     */
+    public Map<String, String> comprobar() throws IOException {
+        if (politica.soloAlFinal() || !tocaCommit() || !commitEnCurso.tryLock()) {
+            return null;
+        }
+        try {
+            // Otro hilo puede haberlo hecho justo antes
+            return tocaCommit() ? commit(false) : null;
+        } finally {
+            commitEnCurso.unlock();
+        }
+    }
+
+    private boolean tocaCommit() {
+        if (politica.filas() > 0 && filas.sum() - filasUltimoCommit >= politica.filas()) {
+            return true;
+        }
+        if (politica.bytes() > 0 && bytes.sum() - bytesUltimoCommit >= politica.bytes()) {
+            return true;
+        }
+        if (politica.segundos() > 0
+                && System.nanoTime() - ultimoCommitNanos >= politica.segundos() * 1_000_000_000L) {
+            return true;
+        }
+        return politica.ramBytes() > 0
+                && writerProperties.ramBytesUsed() + writerHosts.ramBytesUsed() >= politica.ramBytes();
+    }
+
+    /**
+     * Commit final de la ingesta (marca el checkpoint como completo)
+     */
+    public Map<String, String> commitFinal() throws IOException {
+        commitEnCurso.lock();
+        try {
+            return commit(true);
+        } finally {
+            commitEnCurso.unlock();
+        }
+    }
+
+    /**
+     * Pausa a los workers y confirma taxonomías e índices con los mismos datos
+     */
+    private Map<String, String> commit(boolean completo) throws IOException {
+        quiescencia.writeLock().lock();
+        try {
+            if (cancelado.getAsBoolean()) {
+                return null;
+            }
+            antesDeCommit.ejecutar();
+
+            Map<String, String> datos = new LinkedHashMap<>();
+            datos.put(GENERACION, Long.toString(generacion.incrementAndGet()));
+            datos.put(ORIGEN, origen);
+            datos.put(OFFSET, Long.toString(offset.getAsLong()));
+            datos.put(FILAS, Long.toString(filas.sum()));
+            String pend = pendiente.get();
+            if (pend != null) {
+                datos.put(PENDIENTE, pend);
+            }
+            datos.put(COMPLETO, Boolean.toString(completo));
+
+            // Taxonomías primero: el índice confirmado solo usa ordinales ya confirmados
+            taxoProperties.setLiveCommitData(datos.entrySet());
+            taxoProperties.commit();
+            taxoHosts.setLiveCommitData(datos.entrySet());
+            taxoHosts.commit();
+            writerProperties.setLiveCommitData(datos.entrySet());
+            writerProperties.commit();
+            writerHosts.setLiveCommitData(datos.entrySet());
+            writerHosts.commit();
+
+            ultimoCommitNanos = System.nanoTime();
+            filasUltimoCommit = filas.sum();
+            bytesUltimoCommit = bytes.sum();
+            return datos;
+        } finally {
+            quiescencia.writeLock().unlock();
+        }
+    }
+}
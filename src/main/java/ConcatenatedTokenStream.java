@@ -0,0 +1,169 @@
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * TokenStream de un campo formado por varios textos (el mega campo contents),
+ * sin concatenarlos en un String.
+ *
+ * Cada texto se analiza por separado con el analizador del campo, uno detrás
+ * de otro y solo cuando IndexWriter llega a este campo, y sus tokens se
+ * copian a los atributos de este stream. El resultado es el mismo que
+ * analizar los textos unidos con un espacio: las posiciones continúan de un
+ * texto al siguiente (incluidos los huecos de las stopwords del final de un
+ * texto, que el analizador da en end()) y los offsets son los de ese texto
+ * unido. Como cada texto se abre después de cerrar el anterior, basta con los
+ * componentes reutilizables del analizador en el hilo que indexa.
+ *
+ * Los textos cortos muy repetidos se pueden añadir con addCached: se
+ * reproducen desde la {@link TokenCache} del analizador en vez de analizarse.
+ *
+ * Se consume una sola vez, como cualquier TokenStream de un Field.
+ */
+public final class ConcatenatedTokenStream extends TokenStream {
+
+    private final Analyzer analizador;
+    private final String campo;
+    private final TokenCache cache;
+    private final List<String> textos = new ArrayList<>();
+    // Índices de los textos que van por la caché
+    private final BitSet cacheados = new BitSet();
+
+    private final CharTermAttribute termino = addAttribute(CharTermAttribute.class);
+    private final OffsetAttribute offset = addAttribute(OffsetAttribute.class);
+    private final PositionIncrementAttribute incremento = addAttribute(PositionIncrementAttribute.class);
+    private final PositionLengthAttribute longitud = addAttribute(PositionLengthAttribute.class);
+    private final TypeAttribute tipo = addAttribute(TypeAttribute.class);
+
+    // Texto que se está analizando y sus atributos
+    private TokenStream actual;
+    private CharTermAttribute terminoActual;
+    private OffsetAttribute offsetActual;
+    private PositionIncrementAttribute incrementoActual;
+    private PositionLengthAttribute longitudActual;
+    private TypeAttribute tipoActual;
+    // Stream de la caché, reutilizado entre textos
+    private TokenStream reproductor;
+
+    private int siguiente;
+    // Offset en el que empieza el texto actual dentro del texto unido
+    private int base;
+    // Posiciones saltadas al final de los textos anteriores, para el siguiente token
+    private int pendiente;
+
+    public ConcatenatedTokenStream(Analyzer analizador, String campo) {
+        this(analizador, campo, null);
+    }
+
+    /**
+     * cache debe ser la del analizador de campo
+     */
+    public ConcatenatedTokenStream(Analyzer analizador, String campo, TokenCache cache) {
+        this.analizador = analizador;
+        this.campo = campo;
+        this.cache = cache;
+    }
+
+    /**
+     * Añade un texto al final (si no es null)
+     */
+    public ConcatenatedTokenStream add(String texto) {
+        if (texto != null) {
+            textos.add(texto);
+        }
+        return this;
+    }
+
+    /**
+     * Añade un texto (si no es null) que se analiza a través de la caché, si la hay
+     */
+    public ConcatenatedTokenStream addCached(String texto) {
+        if (texto != null) {
+            if (cache != null) {
+                cacheados.set(textos.size());
+            }
+            textos.add(texto);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        while (true) {
+            if (actual == null) {
+                if (siguiente == textos.size()) {
+                    return false;
+                }
+                abrir(textos.get(siguiente), cacheados.get(siguiente));
+            }
+            if (actual.incrementToken()) {
+                clearAttributes();
+                termino.copyBuffer(terminoActual.buffer(), 0, terminoActual.length());
+                incremento.setPositionIncrement(incrementoActual.getPositionIncrement() + pendiente);
+                pendiente = 0;
+                offset.setOffset(base + offsetActual.startOffset(), base + offsetActual.endOffset());
+                longitud.setPositionLength(longitudActual.getPositionLength());
+                tipo.setType(tipoActual.type());
+                return true;
+            }
+            actual.end();
+            pendiente += incrementoActual.getPositionIncrement();
+            // Tras end(), el offset final es la longitud del texto; más el separador
+            base += offsetActual.endOffset() + 1;
+            TokenStream cerrado = actual;
+            actual = null;
+            cerrado.close();
+            siguiente++;
+        }
+    }
+
+    private void abrir(String texto, boolean cacheado) throws IOException {
+        if (cacheado) {
+            actual = reproductor = cache.tokenStream(campo, texto, reproductor);
+        } else {
+            actual = analizador.tokenStream(campo, texto);
+        }
+        terminoActual = actual.addAttribute(CharTermAttribute.class);
+        offsetActual = actual.addAttribute(OffsetAttribute.class);
+        incrementoActual = actual.addAttribute(PositionIncrementAttribute.class);
+        longitudActual = actual.addAttribute(PositionLengthAttribute.class);
+        tipoActual = actual.addAttribute(TypeAttribute.class);
+        actual.reset();
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        siguiente = 0;
+        base = 0;
+        pendiente = 0;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        offset.setOffset(base, base);
+        incremento.setPositionIncrement(pendiente);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (actual != null) {
+                actual.close();
+                actual = null;
+            }
+        } finally {
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Variante thread-safe de {@link LongHashSet} para la ingesta en paralelo.
+ *
+ * Reparte los valores en segmentos según su hash, cada uno con su propio
+ * LongHashSet y su propio cerrojo, así que los workers solo compiten cuando
+ * tocan el mismo segmento.
+ */
+public final class ConcurrentLongHashSet {
+
+    private static final int NUM_SEGMENTOS = 64;
+
+    private final LongHashSet[] segmentos = new LongHashSet[NUM_SEGMENTOS];
+
+    public ConcurrentLongHashSet() {
+        this(NUM_SEGMENTOS * 16);
+    }
+
+    public ConcurrentLongHashSet(int capacidadEsperada) {
+        for (int i = 0; i < NUM_SEGMENTOS; i++) {
+            segmentos[i] = new LongHashSet(Math.max(16, capacidadEsperada / NUM_SEGMENTOS));
+        }
+    }
+
+    private LongHashSet segmento(long v) {
+        // Bits altos del hash para el segmento; LongHashSet usa los bajos para el hueco
+        return segmentos[(LongHashSet.hash(v) >>> 26) & (NUM_SEGMENTOS - 1)];
+    }
+
+    /**
+     * Añade el valor de forma atómica
+     *
+     * @return true si este hilo lo ha añadido (no estaba en el conjunto)
+     */
+    public boolean add(long v) {
+        LongHashSet s = segmento(v);
+        synchronized (s) {
+            return s.add(v);
+        }
+    }
+
+    public boolean contains(long v) {
+        LongHashSet s = segmento(v);
+        synchronized (s) {
+            return s.contains(v);
+        }
+    }
+
+    public long size() {
+        long total = 0;
+        for (LongHashSet s : segmentos) {
+            synchronized (s) {
+                total += s.size();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Memoria aproximada ocupada por todos los segmentos
+     */
+    public long ramBytesUsed() {
+        long total = 16L + 8L * NUM_SEGMENTOS;
+        for (LongHashSet s : segmentos) {
+            synchronized (s) {
+                total += s.ramBytesUsed();
+            }
+        }
+        return total;
+    }
+}
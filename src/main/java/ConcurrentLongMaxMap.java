@@ -0,0 +1,144 @@
+/**
+ * Mapa thread-safe de long a long que guarda, para cada clave, el mayor valor
+ * recibido. Sirve para saber, entre todas las apariciones de un id, cuál es la
+ * última del CSV aunque los workers las procesen desordenadas.
+ *
+ * Igual que {@link ConcurrentLongHashSet}, reparte las claves en segmentos con
+ * su propio cerrojo, y cada segmento es una tabla de direccionamiento abierto
+ * (sondeo lineal) sobre dos long[] paralelos: 16-32 bytes por clave, sin
+ * objetos Long ni nodos de HashMap.
+ */
+public final class ConcurrentLongMaxMap {
+
+    // Valor devuelto cuando la clave no estaba en el mapa
+    public static final long AUSENTE = Long.MIN_VALUE;
+
+    private static final int NUM_SEGMENTOS = 64;
+    private static final float CARGA_MAXIMA = 0.6f;
+
+    private final Segmento[] segmentos = new Segmento[NUM_SEGMENTOS];
+
+    public ConcurrentLongMaxMap() {
+        this(NUM_SEGMENTOS * 16);
+    }
+
+    public ConcurrentLongMaxMap(int capacidadEsperada) {
+        for (int i = 0; i < NUM_SEGMENTOS; i++) {
+            segmentos[i] = new Segmento(Math.max(16, capacidadEsperada / NUM_SEGMENTOS));
+        }
+    }
+
+    private Segmento segmento(long clave) {
+        // Bits altos del hash para el segmento; la tabla usa los bajos para el hueco
+        return segmentos[(LongHashSet.hash(clave) >>> 26) & (NUM_SEGMENTOS - 1)];
+    }
+
+    /**
+     * Guarda max(valor anterior, valor) de forma atómica
+     *
+     * @return el valor anterior, o AUSENTE si este hilo ha añadido la clave
+     */
+    public long maximo(long clave, long valor) {
+        Segmento s = segmento(clave);
+        synchronized (s) {
+            return s.maximo(clave, valor);
+        }
+    }
+
+    public long size() {
+        long total = 0;
+        for (Segmento s : segmentos) {
+            synchronized (s) {
+                total += s.size;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Memoria aproximada ocupada por todos los segmentos
+     */
+    public long ramBytesUsed() {
+        long total = 16L + 8L * NUM_SEGMENTOS;
+        for (Segmento s : segmentos) {
+            synchronized (s) {
+                total += 16L + 16L * s.claves.length + 48;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Tabla de un segmento. El 0 marca el hueco libre; la clave 0 se guarda aparte.
+     */
+    private static final class Segmento {
+        private long[] claves;
+        private long[] valores;
+        private int mascara;
+        private int size;
+        private int umbral;
+        private boolean contieneCero;
+        private long valorCero;
+
+        Segmento(int capacidadEsperada) {
+            int cap = Integer.highestOneBit(Math.max(4, (int) (capacidadEsperada / CARGA_MAXIMA)) - 1) << 1;
+            asignar(cap);
+        }
+
+        private void asignar(int capacidad) {
+            claves = new long[capacidad];
+            valores = new long[capacidad];
+            mascara = capacidad - 1;
+            umbral = (int) (capacidad * CARGA_MAXIMA);
+        }
+
+        long maximo(long clave, long valor) {
+            if (clave == 0) {
+                if (!contieneCero) {
+                    contieneCero = true;
+                    valorCero = valor;
+                    size++;
+                    return AUSENTE;
+                }
+                long anterior = valorCero;
+                valorCero = Math.max(anterior, valor);
+                return anterior;
+            }
+            int i = LongHashSet.hash(clave) & mascara;
+            while (true) {
+                long actual = claves[i];
+                if (actual == 0) {
+                    claves[i] = clave;
+                    valores[i] = valor;
+                    if (++size > umbral) {
+                        crecer();
+                    }
+                    return AUSENTE;
+                }
+                if (actual == clave) {
+                    long anterior = valores[i];
+                    valores[i] = Math.max(anterior, valor);
+                    return anterior;
+                }
+                i = (i + 1) & mascara;
+            }
+        }
+
+        private void crecer() {
+            long[] viejasClaves = claves;
+            long[] viejosValores = valores;
+            asignar(viejasClaves.length << 1);
+            for (int j = 0; j < viejasClaves.length; j++) {
+                long c = viejasClaves[j];
+                if (c != 0) {
+                    int i = LongHashSet.hash(c) & mascara;
+                    while (claves[i] != 0) {
+                        i = (i + 1) & mascara;
+                    }
+                    claves[i] = c;
+                    valores[i] = viejosValores[j];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Divide un CSV mapeado en memoria (FileChannel.map) en rangos de bytes que
+ * empiezan y terminan en límites de fila, para parsearlos en paralelo.
+ *
+ * El problema de cortar un CSV por un byte arbitrario es saber si ese byte
+ * está dentro de un campo entre comillas (p.ej. una description multi-línea).
+ * Se resuelve en dos pasadas paralelas:
+ * 1. Cada trozo cuenta sus bytes '"'. Una comilla escapada ("") suma 2, así que
+ * la paridad acumulada antes de un trozo indica si empieza dentro de comillas.
+ * 2. Conocido ese estado, cada trozo busca su primer salto de línea fuera de
+ * comillas: ahí empieza su rango.
+ *
+ * Solo válido para charsets compatibles con ASCII (los bytes '"' y '\n' nunca
+ * forman parte de un carácter multibyte), ver {@link #soportaCharset}.
+ */
+public final class CsvChunkSplitter implements Closeable {
+
+    // Tamaño máximo de cada trozo mapeado (un MappedByteBuffer no pasa de 2 GB)
+    private static final long MAX_TROZO = 256L * 1024 * 1024;
+
+    private static final Set<Charset> CHARSETS_SOPORTADOS = Set.of(
+            StandardCharsets.UTF_8, StandardCharsets.US_ASCII, StandardCharsets.ISO_8859_1,
+            Charset.forName("windows-1252"));
+
+    private final FileChannel channel;
+    private final Charset charset;
+    private final long tamano;
+    private long inicioDatos = 0;
+
+    /**
+     * Rango [inicio, fin) de bytes del fichero que contiene filas completas
+     */
+    public record Rango(long inicio, long fin) {
+        public long longitud() {
+            return fin - inicio;
+        }
+    }
+
+    /**
+     * Recibe cada fila de un rango ya decodificada (sin el salto de línea final).
+     * Los caracteres están en un buffer que se reutiliza para la siguiente fila.
+     */
+    @FunctionalInterface
+    public interface ConsumidorFila {
+        /**
+         * @param chars  buffer con el texto de la fila
+         * @param off    inicio de la fila en chars
+         * @param len    longitud de la fila
+         * @param offset byte del fichero donde empieza la fila
+         * @return false para dejar de recorrer el rango
+         */
+        boolean aceptar(char[] chars, int off, int len, long offset) throws IOException;
+    }
+
+    public CsvChunkSplitter(Path path, Charset charset) throws IOException {
+        if (!soportaCharset(charset)) {
+            throw new IllegalArgumentException("Charset no soportado en modo mmap: " + charset);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.charset = charset;
+        this.tamano = channel.size();
+    }
+
+    /**
+     * Indica si el charset permite localizar comillas y saltos de línea byte a byte
+     */
+    public static boolean soportaCharset(Charset charset) {
+        return CHARSETS_SOPORTADOS.contains(charset);
+    }
+
+    public long tamano() {
+        return tamano;
+    }
+
+    /**
+     * Lee la fila de cabecera y fija el inicio de los datos justo después
+     *
+     * @return la cabecera decodificada o null si el fichero está vacío
+     */
+    public String leerCabecera() throws IOException {
+        if (tamano == 0) {
+            return null;
+        }
+        long fin = buscarFinDeFila(0, false);
+        String[] cabecera = new String[1];
+        recorrer(new Rango(0, fin), (chars, off, len, offset) -> {
+            cabecera[0] = new String(chars, off, len);
+            return false;
+        });
+        inicioDatos = fin;
+        return cabecera[0];
+    }
+
+    /**
+     * Hace que los datos empiecen en offset (que debe ser un límite de fila
+     * posterior a la cabecera), para reanudar una indexación
+     */
+    public void saltarA(long offset) {
+        if (offset < inicioDatos || offset > tamano) {
+            throw new IllegalArgumentException("Offset fuera del fichero: " + offset);
+        }
+        inicioDatos = offset;
+    }
+
+    /**
+     * Divide los datos (tras la cabecera) en hasta n rangos alineados a filas.
+     * Las dos pasadas se ejecutan en el pool recibido.
+     */
+    public List<Rango> dividir(int n, ExecutorService pool) throws IOException {
+        long datos = tamano - inicioDatos;
+        if (datos <= 0) {
+            return List.of();
+        }
+        int numTrozos = (int) Math.max(n, (datos + MAX_TROZO - 1) / MAX_TROZO);
+        numTrozos = (int) Math.max(1, Math.min(numTrozos, datos));
+        long[] inicios = new long[numTrozos + 1];
+        for (int i = 0; i <= numTrozos; i++) {
+            inicios[i] = inicioDatos + datos * i / numTrozos;
+        }
+
+        // Pasada 1: comillas por trozo
+        List<Future<Long>> cuentas = new ArrayList<>();
+        for (int i = 0; i < numTrozos; i++) {
+            long desde = inicios[i];
+            long hasta = inicios[i + 1];
+            cuentas.add(pool.submit(() -> contarComillas(desde, hasta)));
+        }
+        boolean[] enComillas = new boolean[numTrozos];
+        long acumulado = 0;
+        for (int i = 0; i < numTrozos; i++) {
+            enComillas[i] = (acumulado & 1) == 1;
+            acumulado += esperar(cuentas.get(i));
+        }
+
+        // Pasada 2: primer fin de fila fuera de comillas en cada trozo (el primero
+        // empieza en inicioDatos, que ya es límite de fila)
+        List<Future<Long>> limites = new ArrayList<>();
+        for (int i = 1; i < numTrozos; i++) {
+            long desde = inicios[i];
+            boolean estado = enComillas[i];
+            limites.add(pool.submit(() -> buscarFinDeFila(desde, estado)));
+        }
+        List<Rango> rangos = new ArrayList<>(numTrozos);
+        long inicio = inicioDatos;
+        for (Future<Long> f : limites) {
+            long limite = esperar(f);
+            // Si una fila ocupa varios trozos, sus límites coinciden y el rango se omite
+            if (limite > inicio) {
+                rangos.add(new Rango(inicio, limite));
+                inicio = limite;
+            }
+        }
+        if (tamano > inicio) {
+            rangos.add(new Rango(inicio, tamano));
+        }
+        return rangos;
+    }
+
+    /**
+     * Recorre las filas de un rango decodificándolas con un decoder propio (se
+     * puede llamar desde varios hilos a la vez sobre rangos distintos).
+     *
+     * Como BufferedReader.readLine, elimina el "\r" de los finales "\r\n", tanto
+     * al final de la fila como en las líneas internas de campos multi-línea.
+     */
+    public void recorrer(Rango rango, ConsumidorFila consumidor) throws IOException {
+        if (rango.longitud() > Integer.MAX_VALUE) {
+            throw new IOException("Rango demasiado grande para mapear: " + rango);
+        }
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, rango.inicio(), rango.longitud());
+        CharsetDecoder decoder = charset.newDecoder();
+        CharBuffer chars = CharBuffer.allocate(8192);
+
+        int limite = buf.limit();
+        int inicioFila = 0;
+        boolean enComillas = false;
+        for (int i = 0; i < limite; i++) {
+            byte b = buf.get(i);
+            if (b == '"') {
+                enComillas = !enComillas;
+            } else if (b == '\n' && !enComillas) {
+                chars = decodificar(decoder, buf, inicioFila, i, chars);
+                if (!consumidor.aceptar(chars.array(), 0, chars.limit(), rango.inicio() + inicioFila)) {
+                    return;
+                }
+                inicioFila = i + 1;
+            }
+        }
+        // Última fila sin salto de línea final
+        if (inicioFila < limite) {
+            chars = decodificar(decoder, buf, inicioFila, limite, chars);
+            consumidor.aceptar(chars.array(), 0, chars.limit(), rango.inicio() + inicioFila);
+        }
+    }
+
+    /**
+     * Decodifica los bytes [desde, hasta) normalizando "\r\n" a "\n". El
+     * CharBuffer devuelto (puede ser uno mayor) queda listo para leer. También lo
+     * usa {@link CsvRowReader}.
+     */
+    static CharBuffer decodificar(CharsetDecoder decoder, ByteBuffer buf, int desde, int hasta, CharBuffer chars)
+            throws CharacterCodingException {
+        ByteBuffer src = buf.slice(desde, hasta - desde);
+        int maxChars = (int) Math.ceil(src.remaining() * (double) decoder.maxCharsPerByte()) + 1;
+        if (chars.capacity() < maxChars) {
+            chars = CharBuffer.allocate(Math.max(maxChars, chars.capacity() * 2));
+        }
+        chars.clear();
+        decoder.reset();
+        CoderResult res = decoder.decode(src, chars, true);
+        if (res.isError()) {
+            res.throwException();
+        }
+        decoder.flush(chars);
+
+        // Compactar "\r\n" -> "\n" y quitar el "\r" final
+        int n = chars.position();
+        char[] a = chars.array();
+        int w = 0;
+        for (int r = 0; r < n; r++) {
+            char c = a[r];
+            if (c == '\r' && (r + 1 == n || a[r + 1] == '\n')) {
+                continue;
+            }
+            a[w++] = c;
+        }
+        chars.position(w);
+        chars.flip();
+        return chars;
+    }
+
+    /**
+     * Cuenta los bytes '"' en [desde, hasta)
+     */
+    private long contarComillas(long desde, long hasta) throws IOException {
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, desde, hasta - desde);
+        long count = 0;
+        int limite = buf.limit();
+        for (int i = 0; i < limite; i++) {
+            if (buf.get(i) == '"') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Devuelve la posición siguiente al primer '\n' fuera de comillas a partir de
+     * desde (o el final del fichero si no hay ninguno)
+     */
+    private long buscarFinDeFila(long desde, boolean enComillas) throws IOException {
+        long pos = desde;
+        while (pos < tamano) {
+            long len = Math.min(MAX_TROZO, tamano - pos);
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+            for (int i = 0; i < len; i++) {
+                byte b = buf.get(i);
+                if (b == '"') {
+                    enComillas = !enComillas;
+                } else if (b == '\n' && !enComillas) {
+                    return pos + i + 1;
+                }
+            }
+            pos += len;
+        }
+        return tamano;
+    }
+
+    private static long esperar(Future<Long> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException("División del CSV interrumpida");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Error dividiendo el CSV", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,282 @@
+import java.util.Arrays;
+
+/**
+ * Cursor reutilizable sobre una fila CSV.
+ *
+ * En lugar de partir la fila en una List<String> con todas las columnas,
+ * parse() solo recorre la fila una vez y apunta dónde empieza y acaba cada columna
+ * dentro del buffer de caracteres. El String se crea únicamente cuando se lee
+ * la columna con get(), y las comillas escapadas ("") se resuelven en ese
+ * momento. Una misma instancia se reutiliza para todas las filas de un hilo, así
+ * que los valores devueltos por get() son los únicos objetos por columna.
+ *
+ * Reglas de comillas: una comilla abre o cierra la
+ * zona entrecomillada (y no forma parte del valor), "" dentro de comillas es
+ * una comilla literal y el delimitador solo separa fuera de comillas.
+ *
+ * No es thread-safe: cada hilo debe usar su propia instancia.
+ */
+public final class CsvRow {
+
+    // Tipo de columna según lo que hay que hacer para obtener su valor
+    private static final byte LITERAL = 0; // sin comillas: el rango es el valor
+    private static final byte ENTRECOMILLADA = 1; // "..." sin comillas internas: rango interior
+    private static final byte ESCAPADA = 2; // comillas internas o mezcladas: hay que desescapar
+
+    private static final long FNV_PRIMO = 0x100000001b3L;
+
+    private final char delimiter;
+
+    // Buffer propio para parse(CharSequence); buf puede apuntar a uno externo
+    private char[] propio = new char[1024];
+    private char[] buf = propio;
+    // Extremos de la fila actual dentro de buf
+    private int desde;
+    private int hasta;
+    private int numCols;
+    private int[] inicios = new int[128];
+    private int[] fines = new int[128];
+    private byte[] tipos = new byte[128];
+    private final StringBuilder escape = new StringBuilder();
+    // buf visto como CharSequence, para los parsers de FieldParsers
+    private final CharSequence vista = new Vista();
+
+    public CsvRow(char delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Tokeniza una fila copiándola al buffer interno (que se reutiliza)
+     */
+    public CsvRow parse(CharSequence fila) {
+        int len = fila.length();
+        if (propio.length < len) {
+            propio = new char[Math.max(len, propio.length * 2)];
+        }
+        if (fila instanceof String s) {
+            s.getChars(0, len, propio, 0);
+        } else {
+            for (int i = 0; i < len; i++) {
+                propio[i] = fila.charAt(i);
+            }
+        }
+        return tokenizar(propio, 0, len);
+    }
+
+    /**
+     * Tokeniza una fila que ya está en un buffer de caracteres, sin copiarla. El
+     * buffer no debe modificarse mientras se lean columnas de esta fila.
+     */
+    public CsvRow parse(char[] chars, int off, int len) {
+        return tokenizar(chars, off, off + len);
+    }
+
+    private CsvRow tokenizar(char[] chars, int desde, int hasta) {
+        this.buf = chars;
+        this.desde = desde;
+        this.hasta = hasta;
+        numCols = 0;
+        int inicio = desde;
+        int comillas = 0;
+        boolean inQuotes = false;
+        for (int i = desde; i < hasta; i++) {
+            char c = chars[i];
+            if (c == '"') {
+                inQuotes = !inQuotes;
+                comillas++;
+            } else if (c == delimiter && !inQuotes) {
+                agregarColumna(chars, inicio, i, comillas);
+                inicio = i + 1;
+                comillas = 0;
+            }
+        }
+        agregarColumna(chars, inicio, hasta, comillas);
+        return this;
+    }
+
+    private void agregarColumna(char[] chars, int inicio, int fin, int comillas) {
+        if (numCols == inicios.length) {
+            int n = numCols * 2;
+            inicios = Arrays.copyOf(inicios, n);
+            fines = Arrays.copyOf(fines, n);
+            tipos = Arrays.copyOf(tipos, n);
+        }
+        byte tipo;
+        if (comillas == 0) {
+            tipo = LITERAL;
+        } else if (comillas == 2 && fin - inicio >= 2 && chars[inicio] == '"' && chars[fin - 1] == '"') {
+            tipo = ENTRECOMILLADA;
+            inicio++;
+            fin--;
+        } else {
+            tipo = ESCAPADA;
+        }
+        inicios[numCols] = inicio;
+        fines[numCols] = fin;
+        tipos[numCols] = tipo;
+        numCols++;
+    }
+
+    /**
+     * Texto completo de la fila actual (copia, para guardarla más allá de la
+     * siguiente llamada a parse)
+     */
+    public String texto() {
+        return new String(buf, desde, hasta - desde);
+    }
+
+    /**
+     * Número de columnas de la fila actual
+     */
+    public int size() {
+        return numCols;
+    }
+
+    /**
+     * Valor de la columna, o null si no existe o está vacía
+     */
+    public String get(int col) {
+        if (col < 0 || col >= numCols) {
+            return null;
+        }
+        int inicio = inicios[col];
+        int fin = fines[col];
+        if (tipos[col] != ESCAPADA) {
+            return fin > inicio ? new String(buf, inicio, fin - inicio) : null;
+        }
+        // Las comillas delimitan y no forman parte del valor; "" dentro es literal
+        escape.setLength(0);
+        boolean inQuotes = false;
+        for (int i = inicio; i < fin; i++) {
+            char c = buf[i];
+            if (c == '"') {
+                if (inQuotes && i + 1 < fin && buf[i + 1] == '"') {
+                    escape.append('"');
+                    i++;
+                } else {
+                    inQuotes = !inQuotes;
+                }
+            } else {
+                escape.append(c);
+            }
+        }
+        return escape.length() > 0 ? escape.toString() : null;
+    }
+
+    /**
+     * Mezcla los caracteres de la columna en un hash FNV-1a de 64 bits, sin crear
+     * el String. Se usa el texto tal cual está en la fila (con sus comillas si
+     * las lleva), y una columna ausente cuenta como vacía.
+     */
+    public long hash(int col, long h) {
+        int inicio = 0;
+        int fin = 0;
+        if (col >= 0 && col < numCols) {
+            inicio = inicios[col];
+            fin = fines[col];
+        }
+        // La longitud separa las columnas: "ab","c" no equivale a "a","bc"
+        h = (h ^ (fin - inicio)) * FNV_PRIMO;
+        for (int i = inicio; i < fin; i++) {
+            h = (h ^ buf[i]) * FNV_PRIMO;
+        }
+        return h;
+    }
+
+    /**
+     * Decimal de la columna ({@link FieldParsers#decimal}), NaN si no existe o no
+     * es válido. Como los demás get numéricos, parsea el rango directamente en el
+     * buffer de la fila, sin crear el String (salvo si tiene comillas escapadas).
+     */
+    public double getDecimal(int col) {
+        if (col < 0 || col >= numCols) {
+            return Double.NaN;
+        }
+        if (tipos[col] == ESCAPADA) {
+            return FieldParsers.decimal(get(col));
+        }
+        return FieldParsers.decimal(vista, inicios[col], fines[col]);
+    }
+
+    /**
+     * Precio de la columna ({@link FieldParsers#precio}), NaN si no existe o no
+     * es válido
+     */
+    public double getPrecio(int col) {
+        if (col < 0 || col >= numCols) {
+            return Double.NaN;
+        }
+        if (tipos[col] == ESCAPADA) {
+            return FieldParsers.precio(get(col));
+        }
+        return FieldParsers.precio(vista, inicios[col], fines[col]);
+    }
+
+    /**
+     * Entero de la columna ({@link FieldParsers#entero}), o
+     * FieldParsers.SIN_VALOR
+     */
+    public long getEntero(int col) {
+        if (col < 0 || col >= numCols) {
+            return FieldParsers.SIN_VALOR;
+        }
+        if (tipos[col] == ESCAPADA) {
+            return FieldParsers.entero(get(col));
+        }
+        return FieldParsers.entero(vista, inicios[col], fines[col]);
+    }
+
+    /**
+     * Fecha yyyy-MM-dd de la columna en epoch millis UTC
+     * ({@link FieldParsers#fecha}), o FieldParsers.SIN_VALOR
+     */
+    public long getFecha(int col) {
+        if (col < 0 || col >= numCols) {
+            return FieldParsers.SIN_VALOR;
+        }
+        if (tipos[col] == ESCAPADA) {
+            return FieldParsers.fecha(get(col));
+        }
+        return FieldParsers.fecha(vista, inicios[col], fines[col]);
+    }
+
+    /**
+     * Indica si la columna no existe o está vacía, sin crear ningún String
+     */
+    public boolean isEmpty(int col) {
+        if (col < 0 || col >= numCols) {
+            return true;
+        }
+        if (tipos[col] != ESCAPADA) {
+            return fines[col] == inicios[col];
+        }
+        return get(col) == null;
+    }
+
+    /**
+     * Vista de solo lectura sobre el buffer actual (los índices son posiciones
+     * de buf, no de la fila)
+     */
+    private final class Vista implements CharSequence {
+
+        @Override
+        public int length() {
+            return buf.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return buf[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(buf, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(buf, desde, hasta - desde);
+        }
+    }
+}
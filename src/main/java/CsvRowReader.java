@@ -0,0 +1,182 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.util.Arrays;
+
+/**
+ * Lector secuencial de filas CSV completas (con campos multi-línea entre
+ * comillas) que sabe en qué byte del fichero empieza y acaba cada fila.
+ *
+ * BufferedReader lee por adelantado y no da la posición en bytes, que es lo que
+ * se guarda en cada commit para poder reanudar. Con charsets compatibles con
+ * ASCII (ver {@link CsvChunkSplitter#soportaCharset}) las filas se delimitan
+ * sobre los bytes, buscando '\n' fuera de comillas, y solo entonces se
+ * decodifican. Con el resto se usa BufferedReader y la posición es -1.
+ *
+ * Igual que readLine, los "\r\n" se normalizan a "\n" (también dentro de los
+ * campos multi-línea) y el "\r" final se descarta.
+ */
+public final class CsvRowReader implements Closeable {
+
+    private final InputStream in;
+    private final BufferedReader reader;
+    private final CharsetDecoder decoder;
+
+    private final byte[] buf = new byte[64 * 1024];
+    private int pos = 0;
+    private int lim = 0;
+    // Byte del fichero que corresponde a buf[pos]
+    private long posicion;
+
+    private byte[] fila = new byte[8192];
+    private CharBuffer chars = CharBuffer.allocate(8192);
+    private long inicioFila = -1;
+
+    /**
+     * @param in       flujo situado al principio de una fila
+     * @param charset  codificación del CSV
+     * @param posicion byte del fichero en el que está situado in
+     */
+    public CsvRowReader(InputStream in, Charset charset, long posicion) {
+        if (CsvChunkSplitter.soportaCharset(charset)) {
+            this.in = in;
+            this.reader = null;
+            this.decoder = charset.newDecoder();
+            this.posicion = posicion;
+        } else {
+            this.in = null;
+            this.reader = new BufferedReader(new InputStreamReader(in, charset.newDecoder()));
+            this.decoder = null;
+            this.posicion = -1;
+        }
+    }
+
+    /**
+     * Indica si posicion() y inicioFila() son posiciones reales del fichero
+     */
+    public boolean conoceBytes() {
+        return reader == null;
+    }
+
+    /**
+     * Byte siguiente a la última fila leída (donde empieza la próxima), o -1
+     */
+    public long posicion() {
+        return posicion;
+    }
+
+    /**
+     * Byte donde empieza la última fila leída, o -1
+     */
+    public long inicioFila() {
+        return inicioFila;
+    }
+
+    /**
+     * Lee la siguiente fila completa sin el salto de línea final
+     *
+     * @return la fila o null al final del fichero
+     */
+    public String leerFila() throws IOException {
+        if (reader != null) {
+            return leerFilaTexto();
+        }
+        inicioFila = posicion;
+        int n = 0;
+        boolean enComillas = false;
+        while (true) {
+            if (pos == lim) {
+                lim = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (lim <= 0) {
+                    lim = 0;
+                    // Última fila sin salto de línea final
+                    return n > 0 ? decodificar(n) : null;
+                }
+            }
+            int desde = pos;
+            int finFila = -1;
+            for (int i = pos; i < lim; i++) {
+                byte b = buf[i];
+                if (b == '"') {
+                    enComillas = !enComillas;
+                } else if (b == '\n' && !enComillas) {
+                    finFila = i;
+                    break;
+                }
+            }
+            int hasta = finFila >= 0 ? finFila : lim;
+            n = copiar(desde, hasta, n);
+            pos = finFila >= 0 ? finFila + 1 : lim;
+            posicion += pos - desde;
+            if (finFila >= 0) {
+                return decodificar(n);
+            }
+        }
+    }
+
+    private int copiar(int desde, int hasta, int n) {
+        int len = hasta - desde;
+        if (n + len > fila.length) {
+            fila = Arrays.copyOf(fila, Math.max(n + len, fila.length * 2));
+        }
+        System.arraycopy(buf, desde, fila, n, len);
+        return n + len;
+    }
+
+    private String decodificar(int n) throws IOException {
+        chars = CsvChunkSplitter.decodificar(decoder, ByteBuffer.wrap(fila), 0, n, chars);
+        return new String(chars.array(), 0, chars.limit());
+    }
+
+    /**
+     * Lectura por líneas para charsets no compatibles con ASCII: acumula líneas
+     * hasta que todas las comillas estén cerradas.
+     */
+    private String leerFilaTexto() throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return null;
+        }
+        int comillas = contarComillas(line);
+        if (comillas % 2 == 0) {
+            return line;
+        }
+        StringBuilder row = new StringBuilder(line);
+        while (comillas % 2 != 0) {
+            line = reader.readLine();
+            if (line == null) {
+                // Fin de archivo sin cerrar comillas - devolver lo que tenemos
+                break;
+            }
+            row.append('\n').append(line);
+            comillas += contarComillas(line);
+        }
+        return row.toString();
+    }
+
+    private static int contarComillas(String line) {
+        int count = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        } else {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * Parseo de los valores numéricos y de fecha de las columnas, sin excepciones
+ * ni objetos intermedios.
+ *
+ * Trabajan sobre un rango de caracteres (de un String o, a través de
+ * {@link CsvRow}, directamente del buffer de la fila) y devuelven un
+ * primitivo, con un valor especial cuando el texto está vacío o no es válido
+ * ("", "N/A"...): NaN para los decimales y {@link #SIN_VALOR} para enteros y
+ * fechas. Son métodos estáticos sin estado, así que se pueden usar desde
+ * cualquier hilo.
+ *
+ * Los decimales siguen el camino rápido de Clinger: si la mantisa tiene como
+ * mucho 15 dígitos y el exponente decimal es pequeño, mantisa y potencia de 10
+ * son doubles exactos y una sola multiplicación o división da el double
+ * correctamente redondeado, el mismo que Double.parseDouble. Los demás casos
+ * (raros en el dataset) se validan aquí y se delegan en Double.parseDouble,
+ * que ya no puede fallar.
+ */
+public final class FieldParsers {
+
+    /**
+     * Entero o fecha ausente o inválida
+     */
+    public static final long SIN_VALOR = Long.MIN_VALUE;
+
+    private static final long MILLIS_DIA = 86_400_000L;
+    // Mayor mantisa exacta en un double
+    private static final long MAX_MANTISA_EXACTA = 1L << 53;
+    private static final double[] POTENCIAS_10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private FieldParsers() {
+    }
+
+    /**
+     * Fecha yyyy-MM-dd como epoch millis del inicio del día en UTC, o SIN_VALOR
+     * si no tiene ese formato exacto o no es una fecha del calendario
+     */
+    public static long fecha(CharSequence s, int desde, int hasta) {
+        while (desde < hasta && s.charAt(desde) <= ' ')
+            desde++;
+        while (hasta > desde && s.charAt(hasta - 1) <= ' ')
+            hasta--;
+        if (hasta - desde != 10 || s.charAt(desde + 4) != '-' || s.charAt(desde + 7) != '-') {
+            return SIN_VALOR;
+        }
+        int anio = digitos(s, desde, desde + 4);
+        int mes = digitos(s, desde + 5, desde + 7);
+        int dia = digitos(s, desde + 8, desde + 10);
+        if (anio < 0 || mes < 1 || mes > 12 || dia < 1 || dia > diasMes(anio, mes)) {
+            return SIN_VALOR;
+        }
+        return diasDesdeEpoch(anio, mes, dia) * MILLIS_DIA;
+    }
+
+    public static long fecha(String s) {
+        return s == null ? SIN_VALOR : fecha(s, 0, s.length());
+    }
+
+    /**
+     * Número decimal ([+-]dígitos[.dígitos][e[+-]dígitos], también ".5" y "5."),
+     * o NaN si no es válido
+     */
+    public static double decimal(CharSequence s, int desde, int hasta) {
+        return parsear(s, desde, hasta, false);
+    }
+
+    public static double decimal(String s) {
+        return s == null ? Double.NaN : parsear(s, 0, s.length(), false);
+    }
+
+    /**
+     * Precio: decimal en el que se ignoran '$' y los separadores de miles
+     * ("$1,234.00"), o NaN si no es válido
+     */
+    public static double precio(CharSequence s, int desde, int hasta) {
+        return parsear(s, desde, hasta, true);
+    }
+
+    public static double precio(String s) {
+        return s == null ? Double.NaN : parsear(s, 0, s.length(), true);
+    }
+
+    /**
+     * Entero (la parte entera de un decimal, saturada al rango de int), o
+     * SIN_VALOR si no es válido
+     */
+    public static long entero(CharSequence s, int desde, int hasta) {
+        while (desde < hasta && s.charAt(desde) <= ' ')
+            desde++;
+        while (hasta > desde && s.charAt(hasta - 1) <= ' ')
+            hasta--;
+        // Caso normal: solo dígitos
+        int i = desde;
+        boolean negativo = false;
+        if (i < hasta && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negativo = s.charAt(i) == '-';
+            i++;
+        }
+        if (i < hasta && hasta - i <= 18) {
+            long v = 0;
+            for (; i < hasta; i++) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                v = v * 10 + (c - '0');
+            }
+            if (i == hasta) {
+                return Math.clamp(negativo ? -v : v, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            }
+        }
+        double d = parsear(s, desde, hasta, false);
+        return Double.isNaN(d) ? SIN_VALOR : (int) d;
+    }
+
+    public static long entero(String s) {
+        return s == null ? SIN_VALOR : entero(s, 0, s.length());
+    }
+
+    private static double parsear(CharSequence s, int desde, int hasta, boolean precio) {
+        while (desde < hasta && (s.charAt(desde) <= ' ' || (precio && ignorable(s.charAt(desde)))))
+            desde++;
+        while (hasta > desde && (s.charAt(hasta - 1) <= ' ' || (precio && ignorable(s.charAt(hasta - 1)))))
+            hasta--;
+        int i = desde;
+        boolean negativo = false;
+        if (i < hasta && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negativo = s.charAt(i) == '-';
+            i++;
+        }
+        long mantisa = 0;
+        int significativos = 0;
+        int digitos = 0;
+        // Dígitos que quedan fuera de la mantisa (exceso) y decimales dentro de ella
+        int exceso = 0;
+        int decimales = 0;
+        boolean punto = false;
+        for (; i < hasta; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digitos++;
+                if (mantisa == 0 && c == '0') {
+                    // Cero a la izquierda: solo cuenta su posición si es decimal
+                    if (punto) {
+                        decimales++;
+                    }
+                } else if (significativos < 18) {
+                    mantisa = mantisa * 10 + (c - '0');
+                    significativos++;
+                    if (punto) {
+                        decimales++;
+                    }
+                } else if (!punto) {
+                    exceso++;
+                }
+            } else if (c == '.' && !punto) {
+                punto = true;
+            } else if (precio && ignorable(c)) {
+                continue;
+            } else {
+                break;
+            }
+        }
+        if (digitos == 0) {
+            return Double.NaN;
+        }
+        int exponente = 0;
+        if (i < hasta) {
+            char c = s.charAt(i);
+            if (c != 'e' && c != 'E') {
+                return Double.NaN;
+            }
+            i++;
+            boolean expNegativo = false;
+            if (i < hasta && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                expNegativo = s.charAt(i) == '-';
+                i++;
+            }
+            if (i == hasta) {
+                return Double.NaN;
+            }
+            for (; i < hasta; i++) {
+                char d = s.charAt(i);
+                if (d < '0' || d > '9') {
+                    return Double.NaN;
+                }
+                if (exponente < 100_000) {
+                    exponente = exponente * 10 + (d - '0');
+                }
+            }
+            if (expNegativo) {
+                exponente = -exponente;
+            }
+        }
+
+        int e10 = exponente + exceso - decimales;
+        double v;
+        if (significativos <= 15 && mantisa < MAX_MANTISA_EXACTA && e10 >= -22 && e10 <= 22) {
+            v = e10 < 0 ? mantisa / POTENCIAS_10[-e10] : mantisa * POTENCIAS_10[e10];
+        } else {
+            // El texto ya es válido: Double.parseDouble no lanza excepción
+            v = Double.parseDouble(limpio(s, desde, hasta, precio));
+            return v;
+        }
+        return negativo ? -v : v;
+    }
+
+    /**
+     * El rango sin los caracteres ignorables (para el camino lento)
+     */
+    private static String limpio(CharSequence s, int desde, int hasta, boolean precio) {
+        StringBuilder sb = new StringBuilder(hasta - desde);
+        for (int i = desde; i < hasta; i++) {
+            char c = s.charAt(i);
+            if (!precio || !ignorable(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean ignorable(char c) {
+        return c == '$' || c == ',';
+    }
+
+    /**
+     * Valor de s[desde, hasta) si son todo dígitos, o -1
+     */
+    private static int digitos(CharSequence s, int desde, int hasta) {
+        int v = 0;
+        for (int i = desde; i < hasta; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static int diasMes(int anio, int mes) {
+        return switch (mes) {
+            case 2 -> (anio % 4 == 0 && (anio % 100 != 0 || anio % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /**
+     * Días desde 1970-01-01 del calendario gregoriano proléptico (algoritmo
+     * days_from_civil de H. Hinnant: años que empiezan en marzo, en eras de 400)
+     */
+    private static long diasDesdeEpoch(int anio, int mes, int dia) {
+        int y = mes <= 2 ? anio - 1 : anio;
+        int era = Math.floorDiv(y, 400);
+        int anioEra = y - era * 400;
+        int diaAnio = (153 * (mes > 2 ? mes - 3 : mes + 9) + 2) / 5 + dia - 1;
+        int diaEra = anioEra * 365 + anioEra / 4 - anioEra / 100 + diaAnio;
+        return era * 146_097L + diaEra - 719_468L;
+    }
+}
@@ -0,0 +1,306 @@
+import java.util.Arrays;
+
+/**
+ * Conversión de HTML a texto plano en una sola pasada.
+ *
+ * Quita todas las etiquetas (también comentarios, <!DOCTYPE> y <?...?>) y
+ * decodifica las entidades con nombre más habituales (Latin-1, tipografía) y
+ * las numéricas (&#39; y &#x2764;), escribiendo el resultado en un buffer de
+ * caracteres reutilizable del hilo. Las etiquetas de formato en línea
+ * (<b>, <i>, <a>, <span>...) desaparecen sin más; el resto (<br />, <p>,
+ * <li>...) separan palabras y se sustituyen por un espacio, que no se repite
+ * si ya lo había. &nbsp; se convierte en un espacio normal.
+ *
+ * Lo que no es HTML válido se deja como estaba: un '<' que no abre una
+ * etiqueta ("< 5 min") o que no se cierra nunca, y las entidades
+ * desconocidas o sin ';' final.
+ *
+ * Un texto sin nada que quitar ni decodificar se devuelve tal cual, sin
+ * copiarlo. Si no, la única asignación es el String resultado.
+ */
+public final class HtmlText {
+
+    // Etiquetas que no separan palabras (el resto se cambian por un espacio)
+    private static final String[] EN_LINEA = { "a", "abbr", "b", "big", "em", "font", "i", "mark", "s", "small",
+            "span", "strike", "strong", "sub", "sup", "u" };
+
+    // Entidades con nombre, ordenadas para la búsqueda binaria
+    private static final String[] ENTIDADES;
+    private static final int[] CODIGOS;
+
+    // Entidades de U+00A0 a U+00FF, en orden
+    private static final String[] LATIN1 = { "nbsp", "iexcl", "cent", "pound", "curren", "yen", "brvbar", "sect",
+            "uml", "copy", "ordf", "laquo", "not", "shy", "reg", "macr", "deg", "plusmn", "sup2", "sup3", "acute",
+            "micro", "para", "middot", "cedil", "sup1", "ordm", "raquo", "frac14", "frac12", "frac34", "iquest",
+            "Agrave", "Aacute", "Acirc", "Atilde", "Auml", "Aring", "AElig", "Ccedil", "Egrave", "Eacute", "Ecirc",
+            "Euml", "Igrave", "Iacute", "Icirc", "Iuml", "ETH", "Ntilde", "Ograve", "Oacute", "Ocirc", "Otilde",
+            "Ouml", "times", "Oslash", "Ugrave", "Uacute", "Ucirc", "Uuml", "Yacute", "THORN", "szlig", "agrave",
+            "aacute", "acirc", "atilde", "auml", "aring", "aelig", "ccedil", "egrave", "eacute", "ecirc", "euml",
+            "igrave", "iacute", "icirc", "iuml", "eth", "ntilde", "ograve", "oacute", "ocirc", "otilde", "ouml",
+            "divide", "oslash", "ugrave", "uacute", "ucirc", "uuml", "yacute", "thorn", "yuml" };
+
+    static {
+        Object[][] otras = {
+                { "amp", '&' }, { "lt", '<' }, { "gt", '>' }, { "quot", '"' }, { "apos", '\'' },
+                { "OElig", 0x152 }, { "oelig", 0x153 }, { "Scaron", 0x160 }, { "scaron", 0x161 },
+                { "Yuml", 0x178 }, { "fnof", 0x192 }, { "circ", 0x2C6 }, { "tilde", 0x2DC },
+                { "ensp", 0x2002 }, { "emsp", 0x2003 }, { "thinsp", 0x2009 }, { "zwnj", 0x200C },
+                { "zwj", 0x200D }, { "lrm", 0x200E }, { "rlm", 0x200F }, { "ndash", 0x2013 },
+                { "mdash", 0x2014 }, { "lsquo", 0x2018 }, { "rsquo", 0x2019 }, { "sbquo", 0x201A },
+                { "ldquo", 0x201C }, { "rdquo", 0x201D }, { "bdquo", 0x201E }, { "dagger", 0x2020 },
+                { "Dagger", 0x2021 }, { "bull", 0x2022 }, { "hellip", 0x2026 }, { "permil", 0x2030 },
+                { "prime", 0x2032 }, { "Prime", 0x2033 }, { "lsaquo", 0x2039 }, { "rsaquo", 0x203A },
+                { "euro", 0x20AC }, { "trade", 0x2122 }, { "larr", 0x2190 }, { "rarr", 0x2192 },
+                { "hearts", 0x2665 }, { "check", 0x2713 }, { "star", 0x2606 }
+        };
+        int n = LATIN1.length + otras.length;
+        String[] nombres = new String[n];
+        for (int i = 0; i < LATIN1.length; i++) {
+            nombres[i] = LATIN1[i];
+        }
+        for (int i = 0; i < otras.length; i++) {
+            nombres[LATIN1.length + i] = (String) otras[i][0];
+        }
+        Arrays.sort(nombres);
+        ENTIDADES = nombres;
+        CODIGOS = new int[n];
+        for (int i = 0; i < LATIN1.length; i++) {
+            CODIGOS[Arrays.binarySearch(nombres, LATIN1[i])] = 0xA0 + i;
+        }
+        for (Object[] o : otras) {
+            Object v = o[1];
+            CODIGOS[Arrays.binarySearch(nombres, (String) o[0])] = v instanceof Character c ? c : (Integer) v;
+        }
+        CODIGOS[Arrays.binarySearch(nombres, "nbsp")] = ' ';
+    }
+
+    // Lo mismo como char[], para comparar sin pasar por String
+    private static final char[][] NOMBRES_ENTIDADES = new char[ENTIDADES.length][];
+    private static final char[][] NOMBRES_EN_LINEA = new char[EN_LINEA.length][];
+
+    static {
+        for (int i = 0; i < ENTIDADES.length; i++) {
+            NOMBRES_ENTIDADES[i] = ENTIDADES[i].toCharArray();
+        }
+        for (int i = 0; i < EN_LINEA.length; i++) {
+            NOMBRES_EN_LINEA[i] = EN_LINEA[i].toCharArray();
+        }
+    }
+
+    // Una entidad con nombre tiene como mucho 8 caracteres entre '&' y ';'
+    // (&#x10FFFF; también)
+    private static final int MAX_ENTIDAD = 8;
+
+    private static final ThreadLocal<HtmlText> POR_HILO = ThreadLocal.withInitial(HtmlText::new);
+
+    // Copia de la entrada y resultado; crecen hasta el texto más largo del hilo
+    private char[] entrada = new char[1024];
+    private char[] salida = new char[1024];
+
+    private HtmlText() {
+    }
+
+    /**
+     * Texto plano de un valor con HTML (null si es null)
+     */
+    public static String aTexto(String s) {
+        if (s == null) {
+            return null;
+        }
+        if (s.indexOf('<') < 0 && s.indexOf('&') < 0) {
+            return s;
+        }
+        return POR_HILO.get().limpiar(s);
+    }
+
+    /**
+     * Recorre la entrada una vez, copiando a la salida todo lo que no es
+     * etiqueta ni entidad. La salida nunca es más larga que la entrada: una
+     * etiqueta se queda en un espacio como mucho y una entidad en uno o dos
+     * char. Si no se quita ni decodifica nada se devuelve s.
+     */
+    private String limpiar(String s) {
+        int len = s.length();
+        if (entrada.length < len) {
+            int n = Math.max(len, entrada.length * 2);
+            entrada = new char[n];
+            salida = new char[n];
+        }
+        char[] in = entrada;
+        char[] out = salida;
+        s.getChars(0, len, in, 0);
+        int o = 0;
+        boolean cambiado = false;
+        // Si un '<' no se cierra, ninguno de los siguientes lo hará
+        boolean sinCierre = false;
+        int i = 0;
+        while (i < len) {
+            char c = in[i];
+            if (c == '<' && !sinCierre) {
+                int fin = finEtiqueta(in, i, len);
+                if (fin > 0) {
+                    if (separa(in, i, len) && o > 0 && !Character.isWhitespace(out[o - 1])) {
+                        out[o++] = ' ';
+                    }
+                    i = fin;
+                    cambiado = true;
+                    continue;
+                }
+                sinCierre = fin < 0;
+            } else if (c == '&') {
+                int fin = finEntidad(in, i, len);
+                int cp = fin > 0 ? entidad(in, i + 1, fin) : -1;
+                if (cp >= 0) {
+                    o += Character.toChars(cp, out, o);
+                    i = fin + 1;
+                    cambiado = true;
+                    continue;
+                }
+            }
+            out[o++] = c;
+            i++;
+        }
+        return cambiado ? new String(out, 0, o) : s;
+    }
+
+    /**
+     * Posición siguiente al final de la etiqueta que empieza en in[i] == '<'; 0
+     * si no es una etiqueta y -1 si lo es pero no se cierra
+     */
+    private static int finEtiqueta(char[] in, int i, int len) {
+        if (i + 1 >= len) {
+            return 0;
+        }
+        char c = in[i + 1];
+        if (c == '!' && i + 3 < len && in[i + 2] == '-' && in[i + 3] == '-') {
+            for (int j = i + 4; j + 2 < len; j++) {
+                if (in[j] == '-' && in[j + 1] == '-' && in[j + 2] == '>') {
+                    return j + 3;
+                }
+            }
+            return -1;
+        }
+        boolean abre = esLetra(c) || c == '!' || c == '?';
+        boolean cierra = c == '/' && i + 2 < len && esLetra(in[i + 2]);
+        if (!abre && !cierra) {
+            return 0;
+        }
+        // Hasta el '>' que no esté dentro de un valor de atributo entre comillas
+        char comilla = 0;
+        for (int j = i + 2; j < len; j++) {
+            char d = in[j];
+            if (comilla != 0) {
+                if (d == comilla) {
+                    comilla = 0;
+                }
+            } else if (d == '"' || d == '\'') {
+                comilla = d;
+            } else if (d == '>') {
+                return j + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * false para las etiquetas en línea y los comentarios
+     */
+    private static boolean separa(char[] in, int i, int len) {
+        int ini = i + 1;
+        if (ini < len && in[ini] == '/') {
+            ini++;
+        }
+        int fin = ini;
+        while (fin < len && (esLetra(in[fin]) || (in[fin] >= '0' && in[fin] <= '9'))) {
+            fin++;
+        }
+        if (fin == ini) {
+            return false; // <!--, <!DOCTYPE, <?xml
+        }
+        siguiente: for (char[] e : NOMBRES_EN_LINEA) {
+            if (e.length != fin - ini) {
+                continue;
+            }
+            for (int k = 0; k < e.length; k++) {
+                // Las etiquetas son letras: | 0x20 pasa a minúscula
+                if ((in[ini + k] | 0x20) != e[k]) {
+                    continue siguiente;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Posición del ';' de la entidad que empieza en in[i] == '&'; -1 si no lo hay
+     * a una distancia válida
+     */
+    private static int finEntidad(char[] in, int i, int len) {
+        int max = Math.min(len, i + MAX_ENTIDAD + 2);
+        for (int j = i + 2; j < max; j++) {
+            if (in[j] == ';') {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Código de la entidad in[desde, hasta) (sin '&' ni ';'); -1 si no se conoce
+     */
+    private static int entidad(char[] in, int desde, int hasta) {
+        if (in[desde] == '#') {
+            int base = 10;
+            int i = desde + 1;
+            if (i < hasta && (in[i] == 'x' || in[i] == 'X')) {
+                base = 16;
+                i++;
+            }
+            if (i == hasta) {
+                return -1;
+            }
+            int cp = 0;
+            for (; i < hasta; i++) {
+                int d = Character.digit(in[i], base);
+                if (d < 0) {
+                    return -1;
+                }
+                cp = cp * base + d;
+                if (cp > Character.MAX_CODE_POINT) {
+                    return -1;
+                }
+            }
+            return cp == 0 || (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE) ? -1 : cp;
+        }
+        int lo = 0;
+        int hi = NOMBRES_ENTIDADES.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = comparar(NOMBRES_ENTIDADES[mid], in, desde, hasta);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return CODIGOS[mid];
+            }
+        }
+        return -1;
+    }
+
+    private static int comparar(char[] nombre, char[] in, int desde, int hasta) {
+        int n = Math.min(nombre.length, hasta - desde);
+        for (int k = 0; k < n; k++) {
+            int d = nombre[k] - in[desde + k];
+            if (d != 0) {
+                return d;
+            }
+        }
+        return nombre.length - (hasta - desde);
+    }
+
+    private static boolean esLetra(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -0,0 +1,371 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Métricas de una ingesta: tiempo por etapa del pipeline, filas/s, MB/s y bytes
+ * asignados y CPU de cada hilo (ThreadMXBean).
+ *
+ * Cada hilo anota en su propio {@link Registro}, sin contención: por etapa,
+ * llamadas, nanosegundos y un histograma log2 de latencias. Los totales se
+ * publican con lazySet para que el resumen periódico los lea sin cerrojos; los
+ * histogramas solo se leen en el informe final, con los workers ya terminados.
+ *
+ * Con las etapas se distingue una ingesta limitada por E/S (read), por el
+ * análisis de texto (index_write, donde Lucene tokeniza) o por los merges
+ * (commit y close esperan a los merges pendientes).
+ */
+public final class IngestMetrics {
+
+    /**
+     * Etapas medidas, con su nombre en el informe
+     */
+    public enum Etapa {
+        // Delimitar filas del CSV (incluye la espera de E/S y la descompresión)
+        LECTURA("read"),
+        // Separar una fila en columnas
+        DIVISION("csv_split"),
+        // Leer, limpiar y parsear los valores de las columnas
+        PARSEO("field_parse"),
+        // Crear los campos de Lucene y el campo contents
+        DOCUMENTO("document_build"),
+        // FacetsConfig.build (ordinales de taxonomía)
+        FACETAS("facet_build"),
+        // addDocument(s)/updateDocument: análisis e inversión en el buffer del writer
+        ESCRITURA("index_write"),
+        // Commits (el final incluye unir los fragmentos de --shards)
+        COMMIT("commit"),
+        // Cierre de los writers (espera a los merges pendientes)
+        CIERRE("close");
+
+        final String nombre;
+
+        Etapa(String nombre) {
+            this.nombre = nombre;
+        }
+    }
+
+    private static final Etapa[] ETAPAS = Etapa.values();
+    // Cubeta i: latencias en [2^i, 2^(i+1)) ns
+    private static final int CUBETAS = 64;
+
+    private final com.sun.management.ThreadMXBean hilos = beanHilos();
+    private final Queue<Registro> registros = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Registro> registroHilo = ThreadLocal.withInitial(this::nuevoRegistro);
+    private final LongAdder filas = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final long inicioNanos = System.nanoTime();
+    private ScheduledExecutorService periodico;
+
+    // Estado del último resumen periódico (solo el hilo del resumen)
+    private long filasResumen;
+    private long bytesResumen;
+    private long nanosResumen = inicioNanos;
+
+    private static com.sun.management.ThreadMXBean beanHilos() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            if (bean.isThreadCpuTimeSupported()) {
+                bean.setThreadCpuTimeEnabled(true);
+            }
+            return bean;
+        }
+        return null;
+    }
+
+    private Registro nuevoRegistro() {
+        Registro r = new Registro(Thread.currentThread());
+        registros.add(r);
+        return r;
+    }
+
+    /**
+     * Registro del hilo actual (se crea en el primer uso)
+     */
+    public Registro registro() {
+        return registroHilo.get();
+    }
+
+    /**
+     * Anotaciones de un hilo. Solo debe usarlo el hilo que lo ha obtenido.
+     */
+    public final class Registro {
+        private final Thread hilo;
+        private final AtomicLongArray llamadas = new AtomicLongArray(ETAPAS.length);
+        private final AtomicLongArray nanos = new AtomicLongArray(ETAPAS.length);
+        private final long[][] histograma = new long[ETAPAS.length][CUBETAS];
+        private final long[] maximo = new long[ETAPAS.length];
+        private final long asignadosInicio;
+        private final long cpuInicio;
+        // Última lectura de ThreadMXBean (para cuando el hilo ya ha terminado)
+        private volatile long asignados;
+        private volatile long cpu;
+
+        private Registro(Thread hilo) {
+            this.hilo = hilo;
+            this.asignadosInicio = hilos != null ? hilos.getCurrentThreadAllocatedBytes() : 0;
+            this.cpuInicio = hilos != null && hilos.isThreadCpuTimeEnabled() ? hilos.getCurrentThreadCpuTime() : 0;
+        }
+
+        /**
+         * Anota una llamada a una etapa que empezó en desde (System.nanoTime())
+         *
+         * @return el instante actual, para encadenar la etapa siguiente
+         */
+        public long anotar(Etapa etapa, long desde) {
+            long ahora = System.nanoTime();
+            long d = ahora - desde;
+            int i = etapa.ordinal();
+            // Un único escritor por registro: basta con publicar el nuevo valor
+            llamadas.lazySet(i, llamadas.get(i) + 1);
+            nanos.lazySet(i, nanos.get(i) + d);
+            histograma[i][63 - Long.numberOfLeadingZeros(Math.max(1, d))]++;
+            if (d > maximo[i]) {
+                maximo[i] = d;
+            }
+            return ahora;
+        }
+
+        /**
+         * Contabiliza filas y bytes de entrada terminados y actualiza la memoria
+         * asignada y la CPU del hilo
+         */
+        public void contar(long numFilas, long numBytes) {
+            filas.add(numFilas);
+            bytes.add(numBytes);
+            actualizarHilo();
+        }
+
+        /**
+         * Lee la memoria asignada y la CPU del hilo (llamar desde el propio hilo)
+         */
+        public void actualizarHilo() {
+            if (hilos != null) {
+                asignados = hilos.getCurrentThreadAllocatedBytes() - asignadosInicio;
+                if (hilos.isThreadCpuTimeEnabled()) {
+                    cpu = hilos.getCurrentThreadCpuTime() - cpuInicio;
+                }
+            }
+        }
+
+        private long asignados() {
+            long actual = hilos != null && hilo.isAlive() ? hilos.getThreadAllocatedBytes(hilo.threadId()) : -1;
+            return actual >= 0 ? actual - asignadosInicio : asignados;
+        }
+
+        private long cpu() {
+            long actual = hilos != null && hilos.isThreadCpuTimeEnabled() && hilo.isAlive()
+                    ? hilos.getThreadCpuTime(hilo.threadId())
+                    : -1;
+            return actual >= 0 ? actual - cpuInicio : cpu;
+        }
+    }
+
+    /**
+     * Escribe un resumen en salida cada intervalo (hasta detener())
+     */
+    public void iniciarResumen(long segundos, Consumer<String> salida) {
+        if (segundos <= 0) {
+            return;
+        }
+        periodico = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "indexador-metricas");
+            t.setDaemon(true);
+            return t;
+        });
+        periodico.scheduleAtFixedRate(() -> salida.accept(resumen()), segundos, segundos, TimeUnit.SECONDS);
+    }
+
+    public void detener() {
+        if (periodico != null) {
+            periodico.shutdownNow();
+        }
+    }
+
+    /**
+     * Una línea con el ritmo desde el resumen anterior y el reparto del tiempo de
+     * los hilos entre etapas
+     */
+    public synchronized String resumen() {
+        long ahora = System.nanoTime();
+        long f = filas.sum();
+        long b = bytes.sum();
+        String linea = resumen(f - filasResumen, b - bytesResumen, ahora - nanosResumen);
+        filasResumen = f;
+        bytesResumen = b;
+        nanosResumen = ahora;
+        return linea;
+    }
+
+    /**
+     * Como resumen(), con el ritmo medio de toda la ingesta
+     */
+    public String resumenTotal() {
+        return resumen(filas.sum(), bytes.sum(), System.nanoTime() - inicioNanos);
+    }
+
+    private String resumen(long numFilas, long numBytes, long nanos) {
+        double seg = Math.max(1, nanos) / 1e9;
+        String ritmo = String.format(Locale.ROOT, "%d filas (%.0f filas/s, %.2f MB/s)", filas.sum(),
+                numFilas / seg, numBytes / seg / (1024 * 1024));
+
+        long[] porEtapa = new long[ETAPAS.length];
+        long total = 0;
+        for (Registro r : registros) {
+            for (int i = 0; i < ETAPAS.length; i++) {
+                porEtapa[i] += r.nanos.get(i);
+            }
+        }
+        for (long n : porEtapa) {
+            total += n;
+        }
+        StringBuilder sb = new StringBuilder("Métricas: ").append(ritmo);
+        if (total > 0) {
+            sb.append(" | tiempo acumulado por etapa:");
+            for (int i = 0; i < ETAPAS.length; i++) {
+                if (porEtapa[i] > 0) {
+                    sb.append(' ').append(ETAPAS[i].nombre).append(' ')
+                            .append(Math.round(100.0 * porEtapa[i] / total)).append('%');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Escribe el informe final en JSON (con los workers terminados)
+     *
+     * @param contexto pares clave/valor que describen la ingesta (input, modo...)
+     */
+    public void escribirInforme(Path fichero, Map<String, String> contexto) throws IOException {
+        long transcurrido = System.nanoTime() - inicioNanos;
+        double seg = Math.max(1, transcurrido) / 1e9;
+        long f = filas.sum();
+        long b = bytes.sum();
+
+        StringBuilder json = new StringBuilder(4096);
+        json.append("{\n");
+        for (Map.Entry<String, String> e : contexto.entrySet()) {
+            json.append("  ").append(texto(e.getKey())).append(": ").append(texto(e.getValue())).append(",\n");
+        }
+        json.append("  \"elapsed_ms\": ").append(transcurrido / 1_000_000).append(",\n");
+        json.append("  \"rows\": ").append(f).append(",\n");
+        json.append("  \"bytes\": ").append(b).append(",\n");
+        json.append("  \"rows_per_s\": ").append(numero(f / seg)).append(",\n");
+        json.append("  \"mb_per_s\": ").append(numero(b / seg / (1024 * 1024))).append(",\n");
+
+        json.append("  \"stages\": {");
+        for (int i = 0; i < ETAPAS.length; i++) {
+            long llamadas = 0;
+            long nanos = 0;
+            long maximo = 0;
+            long[] histograma = new long[CUBETAS];
+            for (Registro r : registros) {
+                llamadas += r.llamadas.get(i);
+                nanos += r.nanos.get(i);
+                maximo = Math.max(maximo, r.maximo[i]);
+                for (int c = 0; c < CUBETAS; c++) {
+                    histograma[c] += r.histograma[i][c];
+                }
+            }
+            json.append(i == 0 ? "\n" : ",\n").append("    ").append(texto(ETAPAS[i].nombre)).append(": {");
+            json.append("\"calls\": ").append(llamadas);
+            json.append(", \"total_ms\": ").append(numero(nanos / 1e6));
+            json.append(", \"mean_us\": ").append(numero(llamadas == 0 ? 0 : nanos / 1e3 / llamadas));
+            json.append(", \"p50_us\": ").append(numero(percentil(histograma, llamadas, maximo, 0.50)));
+            json.append(", \"p90_us\": ").append(numero(percentil(histograma, llamadas, maximo, 0.90)));
+            json.append(", \"p99_us\": ").append(numero(percentil(histograma, llamadas, maximo, 0.99)));
+            json.append(", \"max_us\": ").append(numero(maximo / 1e3));
+            // Histograma: cubeta i = llamadas que tardaron [2^i, 2^(i+1)) ns
+            int ultima = CUBETAS - 1;
+            while (ultima > 0 && histograma[ultima] == 0) {
+                ultima--;
+            }
+            json.append(", \"histogram_log2_ns\": [");
+            for (int c = 0; c <= ultima; c++) {
+                json.append(c == 0 ? "" : ", ").append(histograma[c]);
+            }
+            json.append("]}");
+        }
+        json.append("\n  },\n");
+
+        List<Registro> porHilo = new ArrayList<>(registros);
+        long asignadosTotal = 0;
+        json.append("  \"threads\": [");
+        for (int i = 0; i < porHilo.size(); i++) {
+            Registro r = porHilo.get(i);
+            long asignados = r.asignados();
+            asignadosTotal += asignados;
+            json.append(i == 0 ? "\n" : ",\n").append("    {\"name\": ").append(texto(r.hilo.getName()));
+            json.append(", \"allocated_bytes\": ").append(asignados);
+            json.append(", \"cpu_ms\": ").append(r.cpu() / 1_000_000).append('}');
+        }
+        json.append("\n  ],\n");
+        json.append("  \"allocated_bytes\": ").append(asignadosTotal).append(",\n");
+        json.append("  \"allocated_mb_per_s\": ").append(numero(asignadosTotal / seg / (1024 * 1024))).append(",\n");
+        json.append("  \"allocated_bytes_per_row\": ").append(f == 0 ? 0 : asignadosTotal / f).append('\n');
+        json.append("}\n");
+
+        Files.writeString(fichero, json, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Percentil aproximado en microsegundos: cota superior de su cubeta (sin pasar
+     * del máximo observado)
+     */
+    private static double percentil(long[] histograma, long total, long maximo, double p) {
+        if (total == 0) {
+            return 0;
+        }
+        long objetivo = Math.max(1, (long) Math.ceil(total * p));
+        long acumulado = 0;
+        for (int c = 0; c < CUBETAS - 1; c++) {
+            acumulado += histograma[c];
+            if (acumulado >= objetivo) {
+                return Math.min(1L << (c + 1), maximo) / 1e3;
+            }
+        }
+        return maximo / 1e3;
+    }
+
+    private static String numero(double v) {
+        return String.format(Locale.ROOT, "%.3f", v);
+    }
+
+    private static String texto(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Conjunto de long con direccionamiento abierto (sondeo lineal) sobre un
+ * long[]: cada elemento cuesta 8-16 bytes, sin objetos Long ni nodos de
+ * HashMap.
+ *
+ * El 0 se usa como marca de hueco libre y se guarda aparte en un flag. No es
+ * thread-safe; ver {@link ConcurrentLongHashSet} para uso concurrente.
+ */
+public final class LongHashSet {
+
+    private static final float CARGA_MAXIMA = 0.6f;
+
+    private long[] tabla;
+    private int mascara;
+    private int size;
+    private int umbral;
+    private boolean contieneCero;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int capacidadEsperada) {
+        int cap = Integer.highestOneBit(Math.max(4, (int) (capacidadEsperada / CARGA_MAXIMA)) - 1) << 1;
+        asignar(cap);
+    }
+
+    private void asignar(int capacidad) {
+        tabla = new long[capacidad];
+        mascara = capacidad - 1;
+        umbral = (int) (capacidad * CARGA_MAXIMA);
+    }
+
+    /**
+     * Mezcla los bits del valor (los id consecutivos no deben caer juntos)
+     */
+    static int hash(long v) {
+        long h = v * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Añade el valor
+     *
+     * @return true si no estaba en el conjunto
+     */
+    public boolean add(long v) {
+        if (v == 0) {
+            if (contieneCero) {
+                return false;
+            }
+            contieneCero = true;
+            size++;
+            return true;
+        }
+        int i = hash(v) & mascara;
+        while (true) {
+            long actual = tabla[i];
+            if (actual == 0) {
+                tabla[i] = v;
+                if (++size > umbral) {
+                    crecer();
+                }
+                return true;
+            }
+            if (actual == v) {
+                return false;
+            }
+            i = (i + 1) & mascara;
+        }
+    }
+
+    public boolean contains(long v) {
+        if (v == 0) {
+            return contieneCero;
+        }
+        int i = hash(v) & mascara;
+        while (true) {
+            long actual = tabla[i];
+            if (actual == 0) {
+                return false;
+            }
+            if (actual == v) {
+                return true;
+            }
+            i = (i + 1) & mascara;
+        }
+    }
+
+    private void crecer() {
+        long[] vieja = tabla;
+        asignar(vieja.length << 1);
+        for (long v : vieja) {
+            if (v != 0) {
+                int i = hash(v) & mascara;
+                while (tabla[i] != 0) {
+                    i = (i + 1) & mascara;
+                }
+                tabla[i] = v;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Memoria aproximada ocupada (la tabla más la cabecera del objeto)
+     */
+    public long ramBytesUsed() {
+        return 16L + 8L * tabla.length + 32;
+    }
+}
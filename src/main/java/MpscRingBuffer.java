@@ -0,0 +1,79 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cola circular acotada sin cerrojos para varios productores y un único
+ * consumidor (MPSC).
+ *
+ * Cada productor reserva una posición con un compareAndSet sobre la cabeza y
+ * después publica el elemento en su hueco; el consumidor recorre los huecos en
+ * orden y libera cada uno al leerlo. Si la cola está llena, offer() devuelve
+ * false en vez de esperar: un productor nunca se bloquea.
+ *
+ * Un hueco reservado pero aún no publicado detiene al consumidor (poll()
+ * devuelve null) hasta que su productor lo escribe, así que el orden de salida
+ * es el de reserva.
+ */
+public final class MpscRingBuffer<T> {
+
+    private final AtomicReferenceArray<T> huecos;
+    private final int mascara;
+    private final int capacidad;
+    // Siguiente posición por reservar (productores)
+    private final AtomicLong cabeza = new AtomicLong();
+    // Siguiente posición por leer; solo la escribe el consumidor
+    private volatile long cola;
+
+    /**
+     * @param capacidad número de elementos (se redondea a potencia de dos)
+     */
+    public MpscRingBuffer(int capacidad) {
+        int cap = Integer.highestOneBit(Math.max(2, capacidad) - 1) << 1;
+        this.huecos = new AtomicReferenceArray<>(cap);
+        this.mascara = cap - 1;
+        this.capacidad = cap;
+    }
+
+    /**
+     * Añade un elemento (cualquier hilo)
+     *
+     * @return false si la cola está llena y el elemento se descarta
+     */
+    public boolean offer(T e) {
+        while (true) {
+            long h = cabeza.get();
+            if (h - cola >= capacidad) {
+                return false;
+            }
+            if (cabeza.compareAndSet(h, h + 1)) {
+                huecos.lazySet((int) h & mascara, e);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Saca el siguiente elemento (solo el hilo consumidor)
+     *
+     * @return el elemento, o null si no hay ninguno publicado
+     */
+    public T poll() {
+        long c = cola;
+        int i = (int) c & mascara;
+        T e = huecos.get(i);
+        if (e == null) {
+            return null;
+        }
+        huecos.lazySet(i, null);
+        // La escritura volátil publica el hueco libre a los productores
+        cola = c + 1;
+        return e;
+    }
+
+    /**
+     * Indica si no queda nada reservado (aproximado con productores activos)
+     */
+    public boolean isEmpty() {
+        return cabeza.get() == cola;
+    }
+}
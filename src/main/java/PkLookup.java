@@ -0,0 +1,95 @@
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Búsqueda por clave primaria en una foto del índice existente: para una clave
+ * (término exacto) indica si el documento existe y devuelve su hash de
+ * contenido, para saber si una fila es nueva, ha cambiado o sigue igual.
+ *
+ * Cada segmento tiene su propio TermsEnum, que se reutiliza entre búsquedas:
+ * cada consulta es un seekExact por segmento (O(log n) en el diccionario de
+ * términos), sin términos de borrado ni consultas.
+ *
+ * Recorre los segmentos del más nuevo al más antiguo y, dentro de cada uno, se
+ * queda con el último documento vivo: si hubiera varias versiones de la misma
+ * clave, cuenta la última escrita.
+ *
+ * No es thread-safe: cada hilo crea la suya sobre el mismo IndexReader.
+ */
+public final class PkLookup {
+
+    // El documento no existe
+    public static final long AUSENTE = 0;
+    // El documento existe pero no tiene hash (indexado antes de guardarlo)
+    public static final long SIN_HASH = Long.MIN_VALUE;
+
+    private final List<LeafReaderContext> hojas;
+    private final String campoHash;
+    private final TermsEnum[] termsEnums;
+    private PostingsEnum postings;
+
+    /**
+     * @param reader      foto del índice (la comparten todos los hilos)
+     * @param campoTermino campo de la clave indexado como término
+     * @param campoHash   campo NumericDocValues con el hash de contenido
+     */
+    public PkLookup(IndexReader reader, String campoTermino, String campoHash) throws IOException {
+        this.hojas = reader.leaves();
+        this.campoHash = campoHash;
+        this.termsEnums = new TermsEnum[hojas.size()];
+        for (int i = 0; i < hojas.size(); i++) {
+            Terms terms = hojas.get(i).reader().terms(campoTermino);
+            termsEnums[i] = terms != null ? terms.iterator() : null;
+        }
+    }
+
+    /**
+     * Normaliza un hash calculado para que no coincida con AUSENTE ni SIN_HASH
+     */
+    public static long normalizar(long hash) {
+        return hash == AUSENTE || hash == SIN_HASH ? 1 : hash;
+    }
+
+    /**
+     * Hash del documento cuyo campo término vale clave
+     *
+     * @return el hash, AUSENTE o SIN_HASH
+     */
+    public long hashPorTermino(BytesRef clave) throws IOException {
+        for (int i = hojas.size() - 1; i >= 0; i--) {
+            TermsEnum te = termsEnums[i];
+            if (te == null || !te.seekExact(clave)) {
+                continue;
+            }
+            LeafReader hoja = hojas.get(i).reader();
+            postings = te.postings(postings, PostingsEnum.NONE);
+            Bits vivos = hoja.getLiveDocs();
+            int ultimo = -1;
+            for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                if (vivos == null || vivos.get(doc)) {
+                    ultimo = doc;
+                }
+            }
+            if (ultimo >= 0) {
+                return hash(hoja, ultimo);
+            }
+        }
+        return AUSENTE;
+    }
+
+    private long hash(LeafReader hoja, int doc) throws IOException {
+        NumericDocValues dv = hoja.getNumericDocValues(campoHash);
+        return dv != null && dv.advanceExact(doc) ? dv.longValue() : SIN_HASH;
+    }
+}
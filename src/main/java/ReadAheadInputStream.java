@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * InputStream que lee por adelantado otro InputStream en un hilo propio.
+ *
+ * Pensado para entradas comprimidas: el hilo de lectura descomprime bloques
+ * grandes y los deja en una cola acotada mientras el lector del CSV parsea los
+ * anteriores, así que descompresión y parseo se solapan. Los bloques se
+ * reciclan (cola de libres), de modo que la memoria está acotada a
+ * numBloques * tamanoBloque y no se crean arrays por bloque.
+ *
+ * Un error de lectura del hilo se relanza en el siguiente read() del
+ * consumidor. No es thread-safe: un único consumidor.
+ */
+public final class ReadAheadInputStream extends InputStream {
+
+    // Bloque leído: datos[0, len); len == -1 marca el final (o un error)
+    private record Bloque(byte[] datos, int len) {
+    }
+
+    private static final Bloque FIN = new Bloque(new byte[0], -1);
+
+    private final InputStream origen;
+    private final BlockingQueue<Bloque> llenos;
+    private final BlockingQueue<byte[]> libres;
+    private final Thread hilo;
+    private volatile IOException error;
+    private volatile boolean cerrado;
+
+    private Bloque actual;
+    private int pos;
+
+    /**
+     * @param origen       flujo que se lee en el hilo (se cierra con este)
+     * @param tamanoBloque bytes por bloque
+     * @param numBloques   bloques en vuelo (leídos y no consumidos)
+     * @param nombreHilo   nombre del hilo de lectura
+     */
+    public ReadAheadInputStream(InputStream origen, int tamanoBloque, int numBloques, String nombreHilo) {
+        this.origen = origen;
+        this.llenos = new ArrayBlockingQueue<>(numBloques + 1);
+        this.libres = new ArrayBlockingQueue<>(numBloques);
+        for (int i = 0; i < numBloques; i++) {
+            libres.add(new byte[tamanoBloque]);
+        }
+        this.hilo = new Thread(this::leerPorAdelantado, nombreHilo);
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+    }
+
+    /**
+     * Bucle del hilo de lectura: llena bloques libres hasta el final del origen
+     */
+    private void leerPorAdelantado() {
+        try {
+            while (!cerrado) {
+                byte[] buf = libres.take();
+                int n = origen.readNBytes(buf, 0, buf.length);
+                if (n > 0) {
+                    llenos.put(new Bloque(buf, n));
+                }
+                if (n < buf.length) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            if (!cerrado) {
+                error = e;
+            }
+        } catch (InterruptedException e) {
+            // close(): no se lee más
+        }
+        // Hay sitio garantizado: la cola admite un bloque más que los que circulan
+        llenos.offer(FIN);
+    }
+
+    /**
+     * Bloque con datos pendientes, o null al final
+     */
+    private Bloque bloque() throws IOException {
+        if (actual != null && pos < actual.len()) {
+            return actual;
+        }
+        if (actual == FIN) {
+            return null;
+        }
+        if (actual != null) {
+            libres.offer(actual.datos());
+        }
+        try {
+            actual = llenos.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Lectura anticipada interrumpida");
+        }
+        pos = 0;
+        if (actual == FIN) {
+            if (error != null) {
+                throw new IOException("Error leyendo la entrada: " + error.getMessage(), error);
+            }
+            return null;
+        }
+        return actual;
+    }
+
+    @Override
+    public int read() throws IOException {
+        Bloque b = bloque();
+        return b == null ? -1 : b.datos()[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] destino, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        Bloque b = bloque();
+        if (b == null) {
+            return -1;
+        }
+        int n = Math.min(len, b.len() - pos);
+        System.arraycopy(b.datos(), pos, destino, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return actual != null && actual != FIN ? actual.len() - pos : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (cerrado) {
+            return;
+        }
+        cerrado = true;
+        hilo.interrupt();
+        try {
+            hilo.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        origen.close();
+    }
+}
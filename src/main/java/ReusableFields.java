@@ -0,0 +1,293 @@
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoubleDocValuesField;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LatLonDocValuesField;
+import org.apache.lucene.document.LatLonPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Juego de Field/Document reutilizables de un hilo (modo --reuse-fields).
+ *
+ * Cada campo que añade un constructor de documentos tiene una posición fija
+ * (slot). Con reutilización activada, la primera fila crea el Field de cada
+ * slot y las siguientes solo actualizan su valor en el mismo objeto
+ * (setIntValue, setDoubleValue, setStringValue, setBytesValue...), igual que
+ * el modo reuseFields del DocMaker de lucene-benchmark. El Document también se
+ * vacía y se reutiliza. Los campos opcionales simplemente no se añaden al
+ * documento de esa fila, así que no arrastran valores de filas anteriores.
+ *
+ * Es seguro porque IndexWriter consume el documento por completo dentro de
+ * addDocument/updateDocument: al volver, los Field se pueden modificar. Por
+ * la misma razón, un documento construido así no debe guardarse para más
+ * tarde. Sin reutilización cada llamada crea un Field nuevo.
+ *
+ * No es thread-safe: cada hilo tiene el suyo.
+ */
+public final class ReusableFields {
+
+    private final boolean reutilizar;
+    private final Field[] campos;
+    private final BytesRefBuilder[] bytes;
+    private final Document doc = new Document();
+    // Campos multivaluados: una lista por slot, un Field por posición de valor
+    private final List<List<Field>> multi = new ArrayList<>();
+
+    public ReusableFields(boolean reutilizar, int numSlots) {
+        this.reutilizar = reutilizar;
+        this.campos = new Field[numSlots];
+        this.bytes = new BytesRefBuilder[numSlots];
+    }
+
+    /**
+     * Documento vacío para la fila actual
+     */
+    public Document documento() {
+        if (!reutilizar) {
+            return new Document();
+        }
+        doc.clear();
+        return doc;
+    }
+
+    public Field intPoint(int slot, String name, int value) {
+        if (!reutilizar) {
+            return new IntPoint(name, value);
+        }
+        Field f = campos[slot];
+        if (f == null) {
+            return campos[slot] = new IntPoint(name, value);
+        }
+        ((IntPoint) f).setIntValue(value);
+        return f;
+    }
+
+    public Field longPoint(int slot, String name, long value) {
+        if (!reutilizar) {
+            return new LongPoint(name, value);
+        }
+        Field f = campos[slot];
+        if (f == null) {
+            return campos[slot] = new LongPoint(name, value);
+        }
+        ((LongPoint) f).setLongValue(value);
+        return f;
+    }
+
+    public Field doublePoint(int slot, String name, double value) {
+        if (!reutilizar) {
+            return new DoublePoint(name, value);
+        }
+        Field f = campos[slot];
+        if (f == null) {
+            return campos[slot] = new DoublePoint(name, value);
+        }
+        ((DoublePoint) f).setDoubleValue(value);
+        return f;
+    }
+
+    public Field latLonPoint(int slot, String name, double lat, double lon) {
+        if (!reutilizar) {
+            return new LatLonPoint(name, lat, lon);
+        }
+        Field f = campos[slot];
+        if (f == null) {
+            return campos[slot] = new LatLonPoint(name, lat, lon);
+        }
+        ((LatLonPoint) f).setLocationValue(lat, lon);
+        return f;
+    }
+
+    public Field latLonDocValues(int slot, String name, double lat, double lon) {
+        if (!reutilizar) {
+            return new LatLonDocValuesField(name, lat, lon);
+        }
+        Field f = campos[slot];
+        if (f == null) {
+            return campos[slot] = new LatLonDocValuesField(name, lat, lon);
+        }
+        ((LatLonDocValuesField) f).setLocationValue(lat, lon);
+        return f;
+    }
+
+    public Field storedInt(int slot, String name, int value) {
+        if (!reutilizar) {
+            return new StoredField(name, value);
+        }
+        Field f = campos[slot];
+        if (f == null) {
+            return campos[slot] = new StoredField(name, value);
+        }
+        f.setIntValue(value);
+        return f;
+    }
+
+    public Field storedLong(int slot, String name, long value) {
+        if (!reutilizar) {
+            return new StoredField(name, value);
+        }
+        Field f = campos[slot];
+        if (f == null) {
+            return campos[slot] = new StoredField(name, value);
+        }
+        f.setLongValue(value);
+        return f;
+    }
+
+    public Field storedDouble(int slot, String name, double value) {
+        if (!reutilizar) {
+            return new StoredField(name, value);
+        }
+        Field f = campos[slot];
+        if (f == null) {
+            return campos[slot] = new StoredField(name, value);
+        }
+        f.setDoubleValue(value);
+        return f;
+    }
+
+    public Field storedString(int slot, String name, String value) {
+        if (!reutilizar) {
+            return new StoredField(name, value);
+        }
+        Field f = campos[slot];
+        if (f == null) {
+            return campos[slot] = new StoredField(name, value);
+        }
+        f.setStringValue(value);
+        return f;
+    }
+
+    public Field stringField(int slot, String name, String value, Field.Store store) {
+        if (!reutilizar) {
+            return new StringField(name, value, store);
+        }
+        Field f = campos[slot];
+        if (f == null) {
+            return campos[slot] = new StringField(name, value, store);
+        }
+        f.setStringValue(value);
+        return f;
+    }
+
+    public Field textField(int slot, String name, String value, Field.Store store) {
+        return textField(slot, name, value, store, null);
+    }
+
+    /**
+     * TextField analizado a través de cache (o del analizador del IndexWriter
+     * si es null)
+     */
+    public Field textField(int slot, String name, String value, Field.Store store, TokenCache cache) {
+        if (!reutilizar) {
+            return texto(name, value, store, cache);
+        }
+        Field f = campos[slot];
+        if (f == null) {
+            return campos[slot] = texto(name, value, store, cache);
+        }
+        f.setStringValue(value);
+        return f;
+    }
+
+    /**
+     * TextField no almacenado con los tokens ya analizados (p.ej. contents)
+     */
+    public Field textField(int slot, String name, TokenStream value) {
+        if (!reutilizar) {
+            return new TextField(name, value);
+        }
+        Field f = campos[slot];
+        if (f == null) {
+            return campos[slot] = new TextField(name, value);
+        }
+        f.setTokenStream(value);
+        return f;
+    }
+
+    /**
+     * Valor i-ésimo de un TextField multivaluado (p.ej. amenity), analizado a
+     * través de cache si no es null
+     */
+    public Field textFieldMulti(int slot, int i, String name, String value, Field.Store store, TokenCache cache) {
+        if (!reutilizar) {
+            return texto(name, value, store, cache);
+        }
+        while (multi.size() <= slot) {
+            multi.add(null);
+        }
+        List<Field> valores = multi.get(slot);
+        if (valores == null) {
+            multi.set(slot, valores = new ArrayList<>());
+        }
+        if (i < valores.size()) {
+            Field f = valores.get(i);
+            f.setStringValue(value);
+            return f;
+        }
+        Field f = texto(name, value, store, cache);
+        valores.add(f);
+        return f;
+    }
+
+    private static Field texto(String name, String value, Field.Store store, TokenCache cache) {
+        return cache == null ? new TextField(name, value, store) : new TokenCache.CampoTexto(name, value, store, cache);
+    }
+
+    public Field numericDocValues(int slot, String name, long value) {
+        if (!reutilizar) {
+            return new NumericDocValuesField(name, value);
+        }
+        Field f = campos[slot];
+        if (f == null) {
+            return campos[slot] = new NumericDocValuesField(name, value);
+        }
+        f.setLongValue(value);
+        return f;
+    }
+
+    public Field doubleDocValues(int slot, String name, double value) {
+        if (!reutilizar) {
+            return new DoubleDocValuesField(name, value);
+        }
+        Field f = campos[slot];
+        if (f == null) {
+            return campos[slot] = new DoubleDocValuesField(name, value);
+        }
+        f.setDoubleValue(value);
+        return f;
+    }
+
+    /**
+     * SortedDocValuesField con el valor en UTF-8. Al reutilizar, los bytes se
+     * codifican en un BytesRefBuilder propio del slot en vez de en un BytesRef nuevo.
+     */
+    public Field sortedDocValues(int slot, String name, String value) {
+        if (!reutilizar) {
+            return new SortedDocValuesField(name, new BytesRef(value));
+        }
+        BytesRefBuilder b = bytes[slot];
+        if (b == null) {
+            b = bytes[slot] = new BytesRefBuilder();
+        }
+        b.copyChars(value);
+        Field f = campos[slot];
+        if (f == null) {
+            return campos[slot] = new SortedDocValuesField(name, b.get());
+        }
+        f.setBytesValue(b.get());
+        return f;
+    }
+}
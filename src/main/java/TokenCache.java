@@ -0,0 +1,213 @@
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché de análisis para valores cortos muy repetidos (amenities,
+ * bathrooms_text, host_location, host_response_time...).
+ *
+ * Estos campos tienen pocos valores distintos repetidos en millones de filas
+ * y cada uno pasaba entero por la cadena del EnglishAnalyzer (tokenizer,
+ * stopwords, stemming) en cada fila. Aquí el resultado de analizar un valor
+ * (términos, incrementos de posición y offsets, y el estado final de end())
+ * se guarda en una LRU acotada, y los aciertos se reproducen con un
+ * TokenStream mínimo que solo copia esos atributos, los que usa IndexWriter.
+ * Los valores más largos que maxLongitud se analizan siempre, para que los
+ * textos libres no expulsen a los repetidos.
+ *
+ * Cada caché es de un analizador cuya cadena no depende del nombre del campo
+ * (ver {@link AnalyzerRegistry}), así que un mismo valor comparte entrada en
+ * todos los campos que lo usan. La LRU es de cada hilo (LinkedHashMap en
+ * orden de acceso), sin cerrojos: con valores de tan poca cardinalidad, las
+ * copias por hilo ocupan poco.
+ */
+public final class TokenCache {
+
+    private final Analyzer analizador;
+    private final int maxEntradas;
+    private final int maxLongitud;
+    private final ThreadLocal<Map<String, Tokens>> lru;
+
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+
+    public TokenCache(Analyzer analizador, int maxEntradas, int maxLongitud) {
+        this.analizador = analizador;
+        this.maxEntradas = maxEntradas;
+        this.maxLongitud = maxLongitud;
+        this.lru = ThreadLocal.withInitial(() -> new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tokens> eldest) {
+                return size() > maxEntradas;
+            }
+        });
+    }
+
+    /**
+     * TokenStream de valor para campo: el de la caché si el valor es corto, o
+     * el del analizador. Si reutilizable es un stream de caché devuelto antes
+     * (y ya consumido), se reutiliza
+     */
+    public TokenStream tokenStream(String campo, String valor, TokenStream reutilizable) throws IOException {
+        if (valor.length() > maxLongitud) {
+            return analizador.tokenStream(campo, valor);
+        }
+        Map<String, Tokens> mapa = lru.get();
+        Tokens tokens = mapa.get(valor);
+        if (tokens == null) {
+            fallos.increment();
+            tokens = analizar(campo, valor);
+            mapa.put(valor, tokens);
+        } else {
+            aciertos.increment();
+        }
+        Reproductor r = reutilizable instanceof Reproductor rep ? rep : new Reproductor();
+        r.tokens = tokens;
+        return r;
+    }
+
+    /**
+     * Porcentaje de valores servidos desde la caché
+     */
+    public double porcentajeAciertos() {
+        long a = aciertos.sum();
+        long total = a + fallos.sum();
+        return total == 0 ? 0 : 100.0 * a / total;
+    }
+
+    private Tokens analizar(String campo, String valor) throws IOException {
+        Tokens t = new Tokens();
+        try (TokenStream ts = analizador.tokenStream(campo, valor)) {
+            CharTermAttribute termino = ts.addAttribute(CharTermAttribute.class);
+            OffsetAttribute offset = ts.addAttribute(OffsetAttribute.class);
+            PositionIncrementAttribute incremento = ts.addAttribute(PositionIncrementAttribute.class);
+            ts.reset();
+            while (ts.incrementToken()) {
+                t.anadir(termino, incremento.getPositionIncrement(), offset.startOffset(), offset.endOffset());
+            }
+            ts.end();
+            t.incrementoFinal = incremento.getPositionIncrement();
+            t.offsetFinal = offset.endOffset();
+        }
+        t.recortar();
+        return t;
+    }
+
+    /**
+     * Resultado del análisis de un valor (inmutable una vez en la caché)
+     */
+    private static final class Tokens {
+        // Términos seguidos; el i-ésimo acaba en finTermino[i]
+        char[] texto = new char[16];
+        int[] finTermino = new int[2];
+        int[] incremento = new int[2];
+        int[] inicio = new int[2];
+        int[] fin = new int[2];
+        int n;
+        int incrementoFinal;
+        int offsetFinal;
+
+        void anadir(CharTermAttribute termino, int inc, int ini, int f) {
+            int desde = n == 0 ? 0 : finTermino[n - 1];
+            int hasta = desde + termino.length();
+            if (hasta > texto.length) {
+                texto = Arrays.copyOf(texto, Math.max(hasta, texto.length * 2));
+            }
+            System.arraycopy(termino.buffer(), 0, texto, desde, termino.length());
+            if (n == finTermino.length) {
+                finTermino = Arrays.copyOf(finTermino, n * 2);
+                incremento = Arrays.copyOf(incremento, n * 2);
+                inicio = Arrays.copyOf(inicio, n * 2);
+                fin = Arrays.copyOf(fin, n * 2);
+            }
+            finTermino[n] = hasta;
+            incremento[n] = inc;
+            inicio[n] = ini;
+            fin[n] = f;
+            n++;
+        }
+
+        void recortar() {
+            texto = Arrays.copyOf(texto, n == 0 ? 0 : finTermino[n - 1]);
+            finTermino = Arrays.copyOf(finTermino, n);
+            incremento = Arrays.copyOf(incremento, n);
+            inicio = Arrays.copyOf(inicio, n);
+            fin = Arrays.copyOf(fin, n);
+        }
+    }
+
+    /**
+     * Reproduce unos Tokens de la caché
+     */
+    private static final class Reproductor extends TokenStream {
+
+        private final CharTermAttribute termino = addAttribute(CharTermAttribute.class);
+        private final OffsetAttribute offset = addAttribute(OffsetAttribute.class);
+        private final PositionIncrementAttribute incremento = addAttribute(PositionIncrementAttribute.class);
+
+        Tokens tokens;
+        private int i;
+
+        @Override
+        public boolean incrementToken() {
+            if (i == tokens.n) {
+                return false;
+            }
+            clearAttributes();
+            int desde = i == 0 ? 0 : tokens.finTermino[i - 1];
+            termino.copyBuffer(tokens.texto, desde, tokens.finTermino[i] - desde);
+            incremento.setPositionIncrement(tokens.incremento[i]);
+            offset.setOffset(tokens.inicio[i], tokens.fin[i]);
+            i++;
+            return true;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            super.reset();
+            i = 0;
+        }
+
+        @Override
+        public void end() throws IOException {
+            super.end();
+            offset.setOffset(tokens.offsetFinal, tokens.offsetFinal);
+            incremento.setPositionIncrement(tokens.incrementoFinal);
+        }
+    }
+
+    /**
+     * TextField cuyo valor se analiza a través de una TokenCache. Ignora el
+     * analizador del IndexWriter: la caché debe ser la del analizador de ese
+     * campo
+     */
+    public static final class CampoTexto extends Field {
+
+        private final TokenCache cache;
+
+        public CampoTexto(String name, String value, Field.Store store, TokenCache cache) {
+            super(name, value, store == Field.Store.YES ? TextField.TYPE_STORED : TextField.TYPE_NOT_STORED);
+            this.cache = cache;
+        }
+
+        @Override
+        public TokenStream tokenStream(Analyzer analyzer, TokenStream reuse) {
+            try {
+                return cache.tokenStream(name(), stringValue(), reuse);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}